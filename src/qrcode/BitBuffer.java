@@ -0,0 +1,197 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Growable sequence of bits packed in a long array, the first bit being the most
+ * significant bit of the first long. One module of information takes one bit instead of
+ * the byte of a boolean array.
+ */
+public final class BitBuffer {
+
+	private long[] words;
+	private int size;
+
+	/**
+	 * Create an empty buffer
+	 */
+	public BitBuffer() {
+		this(64);
+	}
+
+	/**
+	 * Create an empty buffer able to hold the given number of bits without growing
+	 *
+	 * @param capacity
+	 *            the initial capacity in bits
+	 */
+	public BitBuffer(int capacity) {
+		words = new long[Math.max(1, (capacity + 63) >>> 6)];
+	}
+
+	/**
+	 * Create a buffer holding the bits of a boolean array
+	 *
+	 * @param bits
+	 *            the bits, true meaning 1
+	 * @return a new buffer with the same bits
+	 */
+	public static BitBuffer of(boolean[] bits) {
+		BitBuffer buffer = new BitBuffer(bits.length);
+		for (boolean bit : bits) {
+			buffer.append(bit ? 1 : 0, 1);
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return the number of bits in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all the bits, keeping the capacity
+	 */
+	public void clear() {
+		Arrays.fill(words, 0, (size + 63) >>> 6, 0L);
+		size = 0;
+	}
+
+	/**
+	 * Append the bitCount lowest bits of value, most significant bit first
+	 *
+	 * @param value
+	 *            the bits to append
+	 * @param bitCount
+	 *            the number of bits to append, between 0 and 32
+	 */
+	public void append(int value, int bitCount) {
+		if (bitCount < 0 || bitCount > 32) {
+			throw new IllegalArgumentException("The number of bits has to be between 0 and 32");
+		}
+		if (bitCount == 0) {
+			return;
+		}
+		ensureCapacity(size + bitCount);
+		long bits = value & ((1L << bitCount) - 1);
+		int word = size >>> 6;
+		int free = 64 - (size & 63);
+		if (bitCount <= free) {
+			words[word] |= bits << (free - bitCount);
+		} else {
+			words[word] |= bits >>> (bitCount - free);
+			words[word + 1] |= bits << (64 - (bitCount - free));
+		}
+		size += bitCount;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the bit
+	 * @return true if the bit at the given index is 1
+	 */
+	public boolean get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Bit " + index + " out of " + size);
+		}
+		return (words[index >>> 6] << (index & 63)) < 0;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the first bit
+	 * @param bitCount
+	 *            the number of bits to read, between 0 and 32
+	 * @return the bits from index to index + bitCount - 1, the first one being the most
+	 *         significant
+	 */
+	public int getBits(int index, int bitCount) {
+		if (index < 0 || bitCount < 0 || bitCount > 32 || index + bitCount > size) {
+			throw new IndexOutOfBoundsException("Bits " + index + " to " + (index + bitCount) + " out of " + size);
+		}
+		if (bitCount == 0) {
+			return 0;
+		}
+		int word = index >>> 6;
+		int offset = index & 63;
+		long bits = words[word] << offset;
+		if (offset + bitCount > 64) {
+			bits |= words[word + 1] >>> (64 - offset);
+		}
+		return (int) (bits >>> (64 - bitCount));
+	}
+
+	/**
+	 * Overwrite bits already in the buffer
+	 *
+	 * @param index
+	 *            the index of the first bit to overwrite
+	 * @param value
+	 *            the new bits
+	 * @param bitCount
+	 *            the number of bits to overwrite, between 0 and 32
+	 */
+	public void setBits(int index, int value, int bitCount) {
+		if (index < 0 || bitCount < 0 || bitCount > 32 || index + bitCount > size) {
+			throw new IndexOutOfBoundsException("Bits " + index + " to " + (index + bitCount) + " out of " + size);
+		}
+		if (bitCount == 0) {
+			return;
+		}
+		long mask = (1L << bitCount) - 1;
+		long bits = value & mask;
+		int word = index >>> 6;
+		int free = 64 - (index & 63);
+		if (bitCount <= free) {
+			int shift = free - bitCount;
+			words[word] = (words[word] & ~(mask << shift)) | (bits << shift);
+		} else {
+			int rest = bitCount - free;
+			words[word] = (words[word] & ~(mask >>> rest)) | (bits >>> rest);
+			words[word + 1] = (words[word + 1] & ~(mask << (64 - rest))) | (bits << (64 - rest));
+		}
+	}
+
+	/**
+	 * Change the number of bits. Removed bits are cleared and added bits are zeros.
+	 *
+	 * @param newSize
+	 *            the new number of bits
+	 */
+	public void setSize(int newSize) {
+		if (newSize < 0) {
+			throw new IllegalArgumentException("The size cannot be negative");
+		}
+		if (newSize > size) {
+			ensureCapacity(newSize);
+		} else {
+			int word = newSize >>> 6;
+			if ((newSize & 63) != 0) {
+				words[word] &= -1L << (64 - (newSize & 63));
+				++word;
+			}
+			Arrays.fill(words, word, (size + 63) >>> 6, 0L);
+		}
+		size = newSize;
+	}
+
+	/**
+	 * @return the bits as a boolean array, for the methods working with such arrays
+	 */
+	public boolean[] toBooleanArray() {
+		boolean[] bits = new boolean[size];
+		for (int i = 0; i < size; ++i) {
+			bits[i] = get(i);
+		}
+		return bits;
+	}
+
+	private void ensureCapacity(int capacity) {
+		int needed = (capacity + 63) >>> 6;
+		if (needed > words.length) {
+			words = Arrays.copyOf(words, Math.max(needed, 2 * words.length));
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix of modules packed one bit per module in long rows: module (x, y) is the bit
+ * x % 64 of the word x / 64 of row y, a set bit meaning a dark module. A matrix of version
+ * 40 takes about 4 kB, against about 125 kB for the int[][] of ARGB colors.
+ *
+ * The bits of a row beyond the size are always 0.
+ */
+public final class BitMatrix {
+
+	private static final int W = 0xFF_FF_FF_FF;
+	private static final int B = 0xFF_00_00_00;
+
+	private final int size;
+
+	/**
+	 * Number of longs of a row
+	 */
+	final int rowWords;
+
+	/**
+	 * The rows, one after the other
+	 */
+	final long[] words;
+
+	/**
+	 * Create a matrix with only light modules
+	 *
+	 * @param size
+	 *            the number of modules of a side
+	 */
+	public BitMatrix(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("The size has to be positive");
+		}
+		this.size = size;
+		rowWords = (size + 63) >>> 6;
+		words = new long[size * rowWords];
+	}
+
+	/**
+	 * Create a matrix from a 2-dimensional array of ARGB colors, indexed [x][y]
+	 *
+	 * @param matrix
+	 *            the square matrix, the black modules (0xFF000000) being dark
+	 * @return a new matrix with the same modules
+	 */
+	public static BitMatrix of(int[][] matrix) {
+		BitMatrix bits = new BitMatrix(matrix.length);
+		for (int x = 0; x < matrix.length; ++x) {
+			for (int y = 0; y < matrix.length; ++y) {
+				if (matrix[x][y] == B) bits.set(x, y, true);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the number of modules of a side
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the module in column x and line y is dark
+	 */
+	public boolean get(int x, int y) {
+		return ((words[y * rowWords + (x >>> 6)] >>> x) & 1) != 0;
+	}
+
+	/**
+	 * Set the color of the module in column x and line y
+	 *
+	 * @param dark
+	 *            true for a dark module, false for a light one
+	 */
+	public void set(int x, int y, boolean dark) {
+		int index = y * rowWords + (x >>> 6);
+		if (dark) {
+			words[index] |= 1L << x;
+		} else {
+			words[index] &= ~(1L << x);
+		}
+	}
+
+	/**
+	 * @return the word w of row y, i.e. the modules 64 * w to 64 * w + 63 of the line
+	 */
+	long word(int y, int w) {
+		return words[y * rowWords + w];
+	}
+
+	/**
+	 * Find the next module of a given color on a line, skipping 64 modules at a time
+	 *
+	 * @param x
+	 *            the column where the search starts (included)
+	 * @param y
+	 *            the line
+	 * @param dark
+	 *            the color searched
+	 * @return the column of the first module of that color from x, or size() if there is none
+	 */
+	int nextModule(int x, int y, boolean dark) {
+		if (x >= size) return size;
+		int base = y * rowWords;
+		int w = x >>> 6;
+		long flip = dark ? 0L : -1L;
+		long word = (words[base + w] ^ flip) & (-1L << x);
+		while (word == 0) {
+			if (++w == rowWords) return size;
+			word = words[base + w] ^ flip;
+		}
+		// The bits beyond the size are 0: size at most for the light modules
+		return Math.min(size, (w << 6) + Long.numberOfTrailingZeros(word));
+	}
+
+	/**
+	 * Make all the modules light
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * Overwrite the modules with those of a matrix of the same size
+	 */
+	public void copyFrom(BitMatrix other) {
+		if (other.size != size) {
+			throw new IllegalArgumentException("The size of the two matrices does not match");
+		}
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+
+	/**
+	 * Overwrite the modules with a XOR b, the three matrices having the same size
+	 */
+	void setXor(BitMatrix a, BitMatrix b) {
+		long[] aWords = a.words, bWords = b.words;
+		for (int i = 0; i < words.length; ++i) {
+			words[i] = aWords[i] ^ bWords[i];
+		}
+	}
+
+	/**
+	 * Write the transposed matrix, i.e. the columns of this matrix as rows, into a matrix
+	 * of the same size
+	 */
+	public void transposeInto(BitMatrix target) {
+		transposeInto(target, new long[64]);
+	}
+
+	/**
+	 * Same as {@link #transposeInto(BitMatrix)}, the matrix being transposed by blocks of
+	 * 64x64 modules in a scratch array of 64 longs
+	 */
+	void transposeInto(BitMatrix target, long[] block) {
+		if (target.size != size || target == this) {
+			throw new IllegalArgumentException("The target has to be another matrix of the same size");
+		}
+		for (int by = 0; by < rowWords; ++by) {
+			int rows = Math.min(64, size - (by << 6));
+			for (int bx = 0; bx < rowWords; ++bx) {
+				for (int k = 0; k < 64; ++k) {
+					block[k] = k < rows ? words[((by << 6) + k) * rowWords + bx] : 0L;
+				}
+				transpose64(block);
+				int columns = Math.min(64, size - (bx << 6));
+				for (int k = 0; k < columns; ++k) {
+					target.words[((bx << 6) + k) * rowWords + by] = block[k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Transpose in place a block of 64x64 bits (bit c of word r = module (c, r)) by
+	 * swapping recursively the quarters of blocks of 32, 16, ..., 1 bits.
+	 */
+	private static void transpose64(long[] block) {
+		long m = 0x00000000FFFFFFFFL;
+		for (int j = 32; j != 0; j >>= 1, m ^= m << j) {
+			for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+				long t = ((block[k] >>> j) ^ block[k | j]) & m;
+				block[k] ^= t << j;
+				block[k | j] ^= t;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of dark modules
+	 */
+	public int countDark() {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the matrix as a 2-dimensional array of ARGB colors indexed [x][y], for the
+	 *         methods working with such arrays
+	 */
+	public int[][] toArray() {
+		int[][] matrix = new int[size][size];
+		for (int x = 0; x < size; ++x) {
+			for (int y = 0; y < size; ++y) {
+				matrix[x][y] = get(x, y) ? B : W;
+			}
+		}
+		return matrix;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof BitMatrix && ((BitMatrix) o).size == size && Arrays.equals(((BitMatrix) o).words, words);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(words);
+	}
+}
@@ -0,0 +1,136 @@
+package qrcode;
+
+/**
+ * Layout of the codewords of a QR code for a given version and correction level: how the
+ * data codewords are split into blocks, and where each data and error correction codeword
+ * goes once the blocks are interleaved.
+ *
+ * The plans are immutable and computed once per (version, level) pair, when first needed.
+ */
+final class BlockPlan {
+
+	private static final BlockPlan[][] PLANS = new BlockPlan[4][41];
+
+	/**
+	 * Number of data codewords
+	 */
+	final int dataLength;
+
+	/**
+	 * Number of error correction codewords
+	 */
+	final int eccLength;
+
+	final int nbBlocks;
+
+	final int eccPerBlock;
+
+	/**
+	 * Index of the first data codeword of each block. The short blocks come first,
+	 * followed by the blocks having one more codeword.
+	 */
+	final int[] blockStart;
+
+	/**
+	 * Number of data codewords of each block
+	 */
+	final int[] blockLength;
+
+	/**
+	 * Final position of each data codeword, in the order of the data (block after block)
+	 */
+	final int[] dataScatter;
+
+	/**
+	 * Final position of each error correction codeword, those of block b starting at
+	 * index b * eccPerBlock
+	 */
+	final int[] eccScatter;
+
+	private BlockPlan(int version, char lvl) {
+		int lvlIndex = QRCodeInfos.lvlIndex(lvl);
+		dataLength = QRCodeSpec.dataCodewords(version, lvlIndex);
+		eccLength = QRCodeSpec.eccCodewords(version, lvlIndex);
+		nbBlocks = QRCodeSpec.nbBlocks(version, lvlIndex);
+		eccPerBlock = eccLength / nbBlocks;
+
+		int taille = dataLength / nbBlocks;
+		int nbShortBlocks = nbBlocks - dataLength % nbBlocks;
+
+		blockStart = new int[nbBlocks];
+		blockLength = new int[nbBlocks];
+		dataScatter = new int[dataLength];
+		eccScatter = new int[eccLength];
+
+		for (int b = 0; b < nbBlocks; ++b) {
+			blockStart[b] = b * taille + Math.max(0, b - nbShortBlocks);
+			blockLength[b] = (b < nbShortBlocks) ? taille : taille + 1;
+
+			/*
+			 * Codeword k of each block is followed by codeword k of the next block. The
+			 * last codeword of the long blocks comes after all the others.
+			 */
+			for (int k = 0; k < taille; ++k) {
+				dataScatter[blockStart[b] + k] = k * nbBlocks + b;
+			}
+			if (b >= nbShortBlocks) {
+				dataScatter[blockStart[b] + taille] = taille * nbBlocks + b - nbShortBlocks;
+			}
+			for (int k = 0; k < eccPerBlock; ++k) {
+				eccScatter[b * eccPerBlock + k] = dataLength + k * nbBlocks + b;
+			}
+		}
+	}
+
+	/**
+	 * Get the plan of a version and correction level. The plans being immutable, a plan
+	 * computed twice by concurrent threads is harmless.
+	 *
+	 * @param version
+	 *           qrcode version
+	 * @param lvl
+	 *           a character that defines the level of correction (L, M, Q, H)
+	 * @return the plan of the version and correction level
+	 */
+	static BlockPlan of(int version, char lvl) {
+		int lvlIndex = QRCodeInfos.lvlIndex(lvl);
+		BlockPlan plan = PLANS[lvlIndex][version];
+		if (plan == null) {
+			plan = new BlockPlan(version, lvl);
+			PLANS[lvlIndex][version] = plan;
+		}
+		return plan;
+	}
+
+	/**
+	 * Interleave the data and error correction codewords in a single pass.
+	 *
+	 * @param data
+	 *           the data codewords
+	 * @param errors
+	 *           the error correction codewords, block after block
+	 * @param codewords
+	 *           the array receiving the dataLength + eccLength interleaved codewords
+	 */
+	void interleave(int[] data, int[] errors, int[] codewords) {
+		for (int i = 0; i < dataLength; ++i) {
+			codewords[dataScatter[i]] = data[i];
+		}
+		for (int i = 0; i < eccLength; ++i) {
+			codewords[eccScatter[i]] = errors[i];
+		}
+	}
+
+	/**
+	 * Same as {@link #interleave(int[], int[], int[])}, the codewords being written as
+	 * bytes into a buffer of at least (dataLength + eccLength) * 8 bits.
+	 */
+	void interleave(int[] data, int[] errors, BitBuffer codewords) {
+		for (int i = 0; i < dataLength; ++i) {
+			codewords.setBits(dataScatter[i] * 8, data[i], 8);
+		}
+		for (int i = 0; i < eccLength; ++i) {
+			codewords.setBits(eccScatter[i] * 8, errors[i], 8);
+		}
+	}
+}
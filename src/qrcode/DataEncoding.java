@@ -1,67 +1,413 @@
 package qrcode;
 
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import qrcode.QRCodeInfos.Mode;
+
+import reedsolomon.ErrorCorrectionDecoding;
 import reedsolomon.ErrorCorrectionEncoding;
+import reedsolomon.GeneratorPolynomial;
 
 public final class DataEncoding {
 
+	/**
+	 * Minimal number of codewords (data and error correction) of a QR code for its blocks to
+	 * be encoded in parallel. Smaller QR codes are always encoded sequentially.
+	 */
+	public static final int PARALLEL_THRESHOLD = 1000;
+
+	/**
+	 * Number of bits of the terminator written after the data
+	 */
+	private static final int TERMINATOR_LENGTH = 4;
+
 	/**
 	 * @return boolean array representing the data
 	 */
 	public static boolean[] byteModeEncoding(String input, int version, char lvl) {
+		return byteModeEncoding(input, version, lvl, null);
+	}
 
-		int inputSize = QRCodeInfos.getMaxInputLength(version, lvl);
-		int[] tabIntInput = encodeString(input, inputSize);
+	/**
+	 * Same as {@link #byteModeEncoding(String, int, char)}, but the error correction of the
+	 * blocks is computed in parallel on the given executor when the QR code has at least
+	 * {@link #PARALLEL_THRESHOLD} codewords. The result is the same as the sequential one.
+	 *
+	 * @param executor
+	 *           the executor running the blocks (e.g. ForkJoinPool.commonPool()), or null
+	 *           to always stay sequential
+	 * @return boolean array representing the data
+	 */
+	public static boolean[] byteModeEncoding(String input, int version, char lvl, Executor executor) {
+		return byteModeBits(input, version, lvl, executor).toBooleanArray();
+	}
 
-		int[] encodedArray = addInformations(tabIntInput, version);
+	/**
+	 * Encode the input in byte mode, with its error correction, as a sequence of bits ready
+	 * to be placed in the matrix. The bits are written straight into the buffer: no
+	 * intermediate array of bytes or booleans is built.
+	 *
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static BitBuffer byteModeBits(String input, int version, char lvl) {
+		return byteModeBits(input, version, lvl, null);
+	}
 
-		int finalLength = QRCodeInfos.getCodeWordsLength(version, lvl);
-		int[] tabFilled = fillSequence(encodedArray, finalLength);
+	/**
+	 * Same as {@link #byteModeBits(String, int, char)}, the error correction of the blocks
+	 * being computed on the given executor as in
+	 * {@link #byteModeEncoding(String, int, char, Executor)}.
+	 *
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static BitBuffer byteModeBits(String input, int version, char lvl, Executor executor) {
+		return encode(input, Mode.BYTE, version, lvl, executor);
+	}
 
-		int[] dataBlock = dataBlock(tabFilled, version, lvl);
+	/**
+	 * Encode the input with its error correction, the input being split into numeric,
+	 * alphanumeric and byte segments so that it takes as few bits as possible (see Segmenter).
+	 *
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static BitBuffer encode(String input, int version, char lvl) {
+		return encode(input, version, lvl, null);
+	}
 
-		return bytesToBinaryArray(dataBlock);
+	/**
+	 * Same as {@link #encode(String, int, char)}, the error correction of the blocks being
+	 * computed on the given executor as in {@link #byteModeEncoding(String, int, char, Executor)}.
+	 *
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	public static BitBuffer encode(String input, int version, char lvl, Executor executor) {
+		BlockPlan plan = BlockPlan.of(version, lvl);
+		BitBuffer bits = new BitBuffer(plan.dataLength * 8 + 32);
+		appendData(bits, input, version, lvl, new Segmenter.Workspace());
+		return finish(bits, plan, executor);
 	}
 
 	/**
-	 * Method similar to that of addInformations (int [] inputBytes) in DataEncoding.java
-	 * This is simply adapted for versions greater than or equal to 10. In addition, the
-	 * size of the input is here coded on 2 byte and not just one.
+	 * Encode the input in the given mode, with its error correction. The input is truncated
+	 * to the capacity of the version.
 	 *
-	 * @return The input bytes with an header giving the type and size of the data
+	 * @param mode
+	 *           the encoding mode, able to encode every character of the input
+	 * @param executor
+	 *           the executor computing the error correction of the blocks in parallel, or
+	 *           null to compute it sequentially
+	 * @return the bits of the interleaved data and error correction codewords
 	 */
-	private static int[] addInformations(int[] inputBytes, int version) {
-		if (version < 10) return addInformations(inputBytes);
+	public static BitBuffer encode(String input, Mode mode, int version, char lvl, Executor executor) {
+		BlockPlan plan = BlockPlan.of(version, lvl);
+		BitBuffer bits = new BitBuffer(plan.dataLength * 8 + 32);
+		appendData(bits, input, mode, version, lvl);
+		return finish(bits, plan, executor);
+	}
 
-		int inputLength = inputBytes.length;
-		int[] tabInformations = new int[inputLength + 3];
+	/**
+	 * Append the data bits of the input split into optimal segments, followed by the
+	 * terminator. An input encoded in UTF-8 starts with the ECI header of UTF-8. If the
+	 * segments do not fit in the QR code, the input is truncated in a single mode as by
+	 * {@link #appendData(BitBuffer, String, Mode, int, char)}.
+	 *
+	 * @param workspace
+	 *           the scratch arrays of the segmentation
+	 */
+	static void appendData(BitBuffer bits, String input, int version, char lvl, Segmenter.Workspace workspace) {
+		Segmenter.segment(input, version, workspace);
 
-		int prefixQR = 0b0100;
-		int sizeBinary = inputLength & 0xFF_FF;
-		int sizeBinaryLeft = (sizeBinary >> 8) & 0xFF;
-		int sizeBinaryRight = sizeBinary & 0xFF;
+		if (Segmenter.bits(input, workspace, version) > BlockPlan.of(version, lvl).dataLength * 8) {
+			// The input does not fit: it is truncated in a single mode
+			appendData(bits, input, QRCodeInfos.bestMode(input), version, lvl);
+			return;
+		}
 
-		int deleteLeft = 0xF;
-		tabInformations[0] = ((prefixQR & deleteLeft) << 4) | (sizeBinaryLeft >> 4);
-		tabInformations[1] = ((sizeBinaryLeft & deleteLeft) << 4) | (sizeBinaryRight >> 4);
+		if (byteModeCharset(input) != StandardCharsets.ISO_8859_1) {
+			bits.append(QRCodeInfos.ECI_UTF8, QRCodeInfos.ECI_BITS);
+		}
+		for (int k = 0; k < workspace.count; ++k) {
+			appendSegment(bits, workspace.mode(k), input, workspace.start(k), workspace.end(k), version);
+		}
+		bits.append(0, TERMINATOR_LENGTH);
+	}
 
-		if (inputLength == 0) {
-			tabInformations[2] = ((sizeBinaryRight & deleteLeft) << 4) | (0);
+	/**
+	 * Append the data bits of the input in a single mode, followed by the terminator. The
+	 * input is truncated to the capacity of the version: in byte mode, to the last whole
+	 * character fitting in it, the padding filling the rest.
+	 *
+	 * @param mode
+	 *           the encoding mode, able to encode every character of the input
+	 */
+	static void appendData(BitBuffer bits, String input, Mode mode, int version, char lvl) {
+		if (mode == Mode.BYTE) {
+			boolean latin1 = byteModeCharset(input) == StandardCharsets.ISO_8859_1;
+			int length = encodedLength(input, 0, input.length(), latin1,
+					QRCodeInfos.getMaxInputLength(version, lvl, latin1));
+			if (!latin1) {
+				bits.append(QRCodeInfos.ECI_UTF8, QRCodeInfos.ECI_BITS);
+			}
+			bits.append(0b0100, 4);
+			bits.append(length, version < 10 ? 8 : 16);
+			appendBytes(bits, input, 0, input.length(), latin1, length);
 		} else {
-			tabInformations[2] = ((sizeBinaryRight & deleteLeft) << 4) | (inputBytes[0] >> 4);
-			tabInformations[inputLength + 2] = (inputBytes[inputLength - 1] & deleteLeft) << 4;
+			int length = Math.min(input.length(), QRCodeInfos.getMaxInputLength(version, lvl, mode));
+			appendSegment(bits, mode, input, 0, length, version);
 		}
+		bits.append(0, TERMINATOR_LENGTH);
+	}
 
-		for (int i = 0; i < inputLength - 1 ; ++i) {
-			int partOne = (inputBytes[i] & deleteLeft) << 4;
-			int partTwo = inputBytes[i + 1] >> 4;
+	/**
+	 * Append a segment (mode indicator, character count and data) encoding the characters
+	 * start (included) to end (excluded) of the input.
+	 *
+	 * @param bits
+	 *           the buffer receiving the segment
+	 * @param mode
+	 *           the encoding mode of the segment
+	 * @param version
+	 *           qrcode version, defining the size of the character count
+	 */
+	static void appendSegment(BitBuffer bits, Mode mode, String input, int start, int end, int version) {
+		int countBits = mode.characterCountBits(version);
+
+		switch (mode) {
+			case NUMERIC :
+				bits.append(mode.indicator(), 4);
+				bits.append(end - start, countBits);
+				for (int i = start; i < end; i += 3) {
+					int digits = Math.min(3, end - i);
+					int value = 0;
+					for (int j = i; j < i + digits; ++j) {
+						value = value * 10 + digitValue(input.charAt(j));
+					}
+					bits.append(value, 3 * digits + 1);
+				}
+				break;
+			case ALPHANUMERIC :
+				bits.append(mode.indicator(), 4);
+				bits.append(end - start, countBits);
+				for (int i = start; i < end; i += 2) {
+					if (i + 1 < end) {
+						bits.append(45 * alphanumericValue(input.charAt(i)) + alphanumericValue(input.charAt(i + 1)), 11);
+					} else {
+						bits.append(alphanumericValue(input.charAt(i)), 6);
+					}
+				}
+				break;
+			default :
+				boolean latin1 = byteModeCharset(input) == StandardCharsets.ISO_8859_1;
+				int length = encodedLength(input, start, end, latin1);
+				bits.append(mode.indicator(), 4);
+				bits.append(length, countBits);
+				appendBytes(bits, input, start, end, latin1, length);
+				break;
+		}
+	}
 
-			int outputNumber = partOne | partTwo;
-			tabInformations[i + 3] = outputNumber;
+	/**
+	 * Get the charset used to encode an input in byte mode: ISO-8859-1 (the default charset of
+	 * QR codes) when it can represent the whole input, UTF-8 otherwise, so that no character
+	 * is lost.
+	 *
+	 * @return the charset of the byte mode for this input
+	 */
+	static Charset byteModeCharset(String input) {
+		for (int i = 0; i < input.length(); ++i) {
+			if (input.charAt(i) > 0xFF) {
+				return StandardCharsets.UTF_8;
+			}
 		}
+		return StandardCharsets.ISO_8859_1;
+	}
 
-		return tabInformations;
+	/**
+	 * Number of bytes of the character i in byte mode, the characters start (included) to end
+	 * (excluded) being encoded as String.getBytes does: each half of a surrogate pair counts
+	 * for 2 of the 4 bytes of the pair, and a surrogate without its other half becomes the
+	 * single byte '?' in UTF-8. Every byte count of the byte mode is a sum of this one.
+	 *
+	 * @param latin1
+	 *           true if the input is encoded in ISO-8859-1, false for UTF-8
+	 * @return the number of bytes of the character i
+	 */
+	static int byteLength(String input, int i, int start, int end, boolean latin1) {
+		char c = input.charAt(i);
+		if (latin1 || c < 0x80) {
+			return 1;
+		}
+		if (c < 0x800) {
+			return 2;
+		}
+		if (Character.isHighSurrogate(c)) {
+			return (i + 1 < end && Character.isLowSurrogate(input.charAt(i + 1))) ? 2 : 1;
+		}
+		if (Character.isLowSurrogate(c)) {
+			return (i > start && Character.isHighSurrogate(input.charAt(i - 1))) ? 2 : 1;
+		}
+		return 3;
+	}
+
+	/**
+	 * @return the number of bytes of the characters start (included) to end (excluded) of the
+	 *           input in byte mode, in the charset of the input (see byteModeCharset)
+	 */
+	static int byteLength(String input, int start, int end) {
+		return encodedLength(input, start, end, byteModeCharset(input) == StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return the number of bytes given by String.getBytes for the characters start
+	 *           (included) to end (excluded) of the input
+	 */
+	static int encodedLength(String input, int start, int end, boolean latin1) {
+		if (latin1) {
+			return end - start;
+		}
+		int length = 0;
+		for (int i = start; i < end; ++i) {
+			length += byteLength(input, i, start, end, false);
+		}
+		return length;
+	}
+
+	/**
+	 * @param maxBytes
+	 *           the number of bytes available
+	 * @return the number of bytes of the whole characters, from start, whose bytes fit in
+	 *           maxBytes: no character is cut, a surrogate pair being one character
+	 */
+	static int encodedLength(String input, int start, int end, boolean latin1, int maxBytes) {
+		if (latin1) {
+			return Math.min(end - start, maxBytes);
+		}
+		int length = 0;
+		for (int i = start; i < end; ++i) {
+			int bytes = byteLength(input, i, start, end, false);
+			if (bytes == 2 && Character.isHighSurrogate(input.charAt(i))) {
+				// Both halves of the pair together
+				bytes = 4;
+				++i;
+			}
+			if (length + bytes > maxBytes) {
+				break;
+			}
+			length += bytes;
+		}
+		return length;
+	}
+
+	/**
+	 * Append the bytes of the characters start (included) to end (excluded) of the input,
+	 * the same as String.getBytes gives, without building the byte array.
+	 *
+	 * @param latin1
+	 *           true to encode in ISO-8859-1, false in UTF-8
+	 * @param maxBytes
+	 *           the number of bytes available: the input is truncated after the last whole
+	 *           character fitting in them, as counted by encodedLength
+	 */
+	static void appendBytes(BitBuffer bits, String input, int start, int end, boolean latin1, int maxBytes) {
+		int written = 0;
+		for (int i = start; i < end && written < maxBytes; ++i) {
+			char c = input.charAt(i);
+			int value, count;
+			if (latin1 || c < 0x80) {
+				value = c;
+				count = 1;
+			} else if (c < 0x800) {
+				value = 0xC0 | (c >>> 6);
+				value = (value << 8) | 0x80 | (c & 0x3F);
+				count = 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(input.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, input.charAt(++i));
+				value = (0xF0 | (codePoint >>> 18)) << 24 | (0x80 | ((codePoint >>> 12) & 0x3F)) << 16
+						| (0x80 | ((codePoint >>> 6) & 0x3F)) << 8 | (0x80 | (codePoint & 0x3F));
+				count = 4;
+			} else if (Character.isSurrogate(c)) {
+				value = '?';
+				count = 1;
+			} else {
+				value = (0xE0 | (c >>> 12)) << 16 | (0x80 | ((c >>> 6) & 0x3F)) << 8 | (0x80 | (c & 0x3F));
+				count = 3;
+			}
+			// A character that does not fit whole is not written
+			if (written + count > maxBytes) {
+				return;
+			}
+			bits.append(value, 8 * count);
+			written += count;
+		}
+	}
+
+	private static int digitValue(char c) {
+		if (c < '0' || c > '9') {
+			throw new IllegalArgumentException("The character '" + c + "' cannot be encoded in numeric mode");
+		}
+		return c - '0';
+	}
+
+	private static int alphanumericValue(char c) {
+		int value = QRCodeInfos.alphanumericValue(c);
+		if (value < 0) {
+			throw new IllegalArgumentException("The character '" + c + "' cannot be encoded in alphanumeric mode");
+		}
+		return value;
+	}
+
+	/**
+	 * Complete the data bits (terminator included) to fill the capacity of the QR code, then
+	 * add the error correction and interleave the blocks.
+	 *
+	 * @param bits
+	 *           the data bits, truncated if they exceed the capacity
+	 * @return the bits of the interleaved data and error correction codewords
+	 */
+	private static BitBuffer finish(BitBuffer bits, BlockPlan plan, Executor executor) {
+		BitBuffer codewords = new BitBuffer((plan.dataLength + plan.eccLength) * 8);
+		finish(bits, plan, new int[plan.dataLength], new int[plan.eccLength], codewords, executor);
+		return codewords;
+	}
+
+	/**
+	 * Same as {@link #finish(BitBuffer, BlockPlan, Executor)} with arrays given by the
+	 * caller, so that nothing is allocated
+	 *
+	 * @param data
+	 *           an array of at least plan.dataLength codewords, receiving the data codewords
+	 * @param errors
+	 *           an array of at least plan.eccLength codewords, receiving the error
+	 *           correction codewords
+	 * @param codewords
+	 *           the buffer receiving the interleaved codewords, its previous bits are
+	 *           replaced
+	 */
+	static void finish(BitBuffer bits, BlockPlan plan, int[] data, int[] errors, BitBuffer codewords,
+			Executor executor) {
+		int capacity = plan.dataLength * 8;
+		if (bits.size() > capacity) {
+			bits.setSize(capacity);
+		}
+		bits.setSize((bits.size() + 7) & ~7);
+
+		int step = 0;
+		while (bits.size() < capacity) {
+			bits.append((step % 2 == 0) ? 236 : 17, 8);
+			step++;
+		}
+
+		for (int i = 0; i < plan.dataLength; ++i) {
+			data[i] = bits.getBits(i * 8, 8);
+		}
+
+		errorCorrection(data, plan, errors, executor);
+
+		codewords.setSize((plan.dataLength + plan.eccLength) * 8);
+		plan.interleave(data, errors, codewords);
 	}
 
 	/**
@@ -100,64 +446,103 @@ public final class DataEncoding {
 	}
 
 	/**
-	 * Method which allows QRCodes to be encoded in all correction levels and
-	 * up to version 40. It defines the number of small and long blocks, and
-	 * calls for error correction accordingly.
+	 * Compute the error correction codewords of all the blocks of a QR code.
 	 *
 	 * @param data
 	 *           data encoded in numbers
+	 * @param plan
+	 *           the block plan of the version and correction level
+	 * @param errors
+	 *           the array receiving the error correction codewords, block after block
+	 * @param executor
+	 *           the executor computing the error correction of the blocks in parallel, or
+	 *           null to compute it sequentially
+	 */
+	private static void errorCorrection(int[] data, BlockPlan plan, int[] errors, Executor executor) {
+		if (executor != null && plan.nbBlocks > 1 && plan.dataLength + plan.eccLength >= PARALLEL_THRESHOLD) {
+			errorCorrectionParallel(data, plan, errors, executor);
+		} else {
+			errorCorrection(data, plan, errors, 0, plan.nbBlocks);
+		}
+	}
+
+	/**
+	 * Compute the error correction codewords of the blocks first (included) to last
+	 * (excluded) of the plan.
+	 *
+	 * @param errors
+	 *           the array receiving the error correction codewords, those of block b
+	 *           starting at index b * plan.eccPerBlock
+	 */
+	private static void errorCorrection(int[] data, BlockPlan plan, int[] errors, int first, int last) {
+		GeneratorPolynomial generator = GeneratorPolynomial.of(plan.eccPerBlock);
+		for (int b = first; b < last; ++b) {
+			ErrorCorrectionEncoding.encode(data, plan.blockStart[b], plan.blockLength[b], generator, errors,
+					b * plan.eccPerBlock);
+		}
+	}
+
+	/**
+	 * Same as errorCorrection for all the blocks, the blocks being shared between tasks
+	 * run by the executor. Each task writes its own part of errors.
+	 */
+	private static void errorCorrectionParallel(int[] data, BlockPlan plan, int[] errors, Executor executor) {
+		int nbBlocks = plan.nbBlocks;
+		int nbTasks = Math.min(nbBlocks, Runtime.getRuntime().availableProcessors());
+		CompletableFuture<?>[] tasks = new CompletableFuture<?>[nbTasks];
+
+		for (int t = 0; t < nbTasks; ++t) {
+			int first = t * nbBlocks / nbTasks;
+			int last = (t + 1) * nbBlocks / nbTasks;
+			tasks[t] = CompletableFuture.runAsync(() -> errorCorrection(data, plan, errors, first, last), executor);
+		}
+		CompletableFuture.allOf(tasks).join();
+	}
+
+	/**
+	 * Check that the error correction codewords of encoded data are consistent with its
+	 * data codewords, block by block. Meant to self-verify every generated QR code, it only
+	 * allocates one array of the size of a block.
+	 *
+	 * @param data
+	 *           the data given by byteModeEncoding
 	 * @param version
 	 * 			qrcode version
 	 * @param lvl
 	 *           a character that defines the level of correction (L, M, Q, H)
-	 * @return integer array populated in the correct order with error correction data.
+	 * @return true if every block is valid, false otherwise
 	 */
-	private static int[] dataBlock(int[] data, int version, char lvl) {
-
-		int nbBlocks = QRCodeInfos.nbBlocks(version, lvl);
-		int size = data.length;
-		int eccLength = QRCodeInfos.getECCLength(version, lvl);
-		int eccParBlock = eccLength / nbBlocks;
-		int lgBlocks = data.length % nbBlocks;
-		int[] dataBlocks = new int[size + eccLength];
-		int var;
-		int taille = size / nbBlocks;
-
-		for (int i = 1; i <= nbBlocks-lgBlocks; ++i) {
-			int[] tab = new int[taille];
-			var = (i-1)*taille;
-			if (i * taille - var >= 0) System.arraycopy(data, var, tab, 0, i * taille - var);
-
-			int[] tabError = ErrorCorrectionEncoding.encode(tab, eccParBlock);
-
-			for (int k = 0; k < size-lgBlocks; k += nbBlocks) {
-				dataBlocks[k+i-1] = tab[k/nbBlocks];
-			}
-			for (int p = size; p < size+eccLength; p += nbBlocks) {
-				dataBlocks[p+i-1] = tabError[(p-size)/nbBlocks];
-			}
-		}
-
-		int cpt = 0;
-		for (int i = nbBlocks-lgBlocks+1; i <= nbBlocks; ++i) {
-			int[] tab = new int[(size / nbBlocks)+1];
-			var = ((i-1)*taille) + (i-(nbBlocks-lgBlocks)) -1;
-			int i1 = i * taille + (i - (nbBlocks - lgBlocks)) - var;
-			if (i1 >= 0)
-				System.arraycopy(data, var, tab, 0, i1);
+	public static boolean verify(boolean[] data, int version, char lvl) {
+		return verify(BitBuffer.of(data), version, lvl);
+	}
 
-			int[] tabError = ErrorCorrectionEncoding.encode(tab, eccParBlock);
+	/**
+	 * Same as {@link #verify(boolean[], int, char)} for the bits given by byteModeBits.
+	 *
+	 * @return true if every block is valid, false otherwise
+	 */
+	public static boolean verify(BitBuffer data, int version, char lvl) {
+		BlockPlan plan = BlockPlan.of(version, lvl);
+		if (data.size() < (plan.dataLength + plan.eccLength) * 8) {
+			return false;
+		}
 
-			for (int k = 0; k < size-lgBlocks; k += nbBlocks) {
-				dataBlocks[k+i-1] = tab[k/nbBlocks];
+		int eccPerBlock = plan.eccPerBlock;
+		int[] block = new int[plan.blockLength[plan.nbBlocks - 1] + eccPerBlock];
+		for (int b = 0; b < plan.nbBlocks; ++b) {
+			int start = plan.blockStart[b];
+			int length = plan.blockLength[b];
+			for (int k = 0; k < length; ++k) {
+				block[k] = data.getBits(plan.dataScatter[start + k] * 8, 8);
+			}
+			for (int k = 0; k < eccPerBlock; ++k) {
+				block[length + k] = data.getBits(plan.eccScatter[b * eccPerBlock + k] * 8, 8);
 			}
-			dataBlocks[size-lgBlocks+cpt] = tab[tab.length-1];
-			++cpt;
-			for (int p = size; p < size+eccLength; p += nbBlocks) {
-				dataBlocks[p+i-1] = tabError[(p-size)/nbBlocks];
+			if (!ErrorCorrectionDecoding.check(block, 0, length + eccPerBlock, eccPerBlock)) {
+				return false;
 			}
 		}
-		return dataBlocks;
+		return true;
 	}
 
 	/**
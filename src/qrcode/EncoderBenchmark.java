@@ -0,0 +1,86 @@
+package qrcode;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Small benchmark of {@link QRCodeEncoder} at a fixed version: time per QR code and bytes
+ * allocated per QR code once the encoder is warmed up, compared with the static pipeline
+ * (DataEncoding.encode then MatrixConstruction.renderQRCode).
+ *
+ * The allocated bytes are read from com.sun.management.ThreadMXBean when the JVM provides
+ * it. Run it with: java qrcode.EncoderBenchmark
+ */
+public final class EncoderBenchmark {
+
+	private static final int VERSION = 20;
+	private static final char LVL = 'M';
+	private static final int INPUTS = 64;
+	private static final int ROUNDS = 50;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) {
+		Random random = new Random(0);
+		String[] inputs = new String[INPUTS];
+		for (int i = 0; i < INPUTS; i++) {
+			StringBuilder input = new StringBuilder();
+			int length = QRCodeInfos.getMaxInputLength(VERSION, LVL) - random.nextInt(20);
+			for (int c = 0; c < length; c++) {
+				input.append((char) (' ' + random.nextInt(95)));
+			}
+			inputs[i] = input.toString();
+		}
+
+		QRCodeEncoder encoder = new QRCodeEncoder();
+		BitMatrix output = new BitMatrix(QRCodeInfos.getMatrixSize(VERSION));
+		for (String input : inputs) {
+			BitMatrix expected = MatrixConstruction.renderQRCode(VERSION, DataEncoding.encode(input, VERSION, LVL), LVL);
+			encoder.encode(input, VERSION, LVL, output);
+			if (!expected.equals(output)) {
+				throw new IllegalStateException("The encoder disagrees with the static pipeline");
+			}
+		}
+
+		double staticTime = Double.MAX_VALUE;
+		double encoderTime = Double.MAX_VALUE;
+		long staticBytes = 0;
+		long encoderBytes = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (String input : inputs) {
+				MatrixConstruction.renderQRCode(VERSION, DataEncoding.encode(input, VERSION, LVL), LVL);
+			}
+			staticTime = Math.min(staticTime, (System.nanoTime() - start) / 1e3 / INPUTS);
+			staticBytes = (allocatedBytes() - bytes) / INPUTS;
+
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			for (String input : inputs) {
+				encoder.encode(input, VERSION, LVL, output);
+			}
+			encoderTime = Math.min(encoderTime, (System.nanoTime() - start) / 1e3 / INPUTS);
+			encoderBytes = (allocatedBytes() - bytes) / INPUTS;
+		}
+
+		System.out.printf("Version %d-%c          time (us/code)   allocated (bytes/code)%n", VERSION, LVL);
+		System.out.printf("static pipeline     %14.1f   %22s%n", staticTime, format(staticBytes));
+		System.out.printf("QRCodeEncoder       %14.1f   %22s%n", encoderTime, format(encoderBytes));
+	}
+
+	/**
+	 * @return the number of bytes allocated by the current thread, or -1 if unknown
+	 */
+	private static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static String format(long bytes) {
+		return allocatedBytes() < 0 ? "n/a" : Long.toString(bytes);
+	}
+}
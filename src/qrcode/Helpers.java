@@ -4,8 +4,15 @@ package qrcode;
 import java.awt.BorderLayout;
 import java.awt.Font;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -23,9 +30,8 @@ public final class Helpers {
 	private static final String PATH_HEADER = "images" + SEP;
 	
 	
-	private static final int BACKGROUND_COLOR = -1;
 	private static final int SCALE = 10;
-	private static final int BORDER = 4*SCALE; //quiet zone is 4 module large
+	private static final int BORDER = QRCodeInfos.QUIET_ZONE*SCALE; //quiet zone is 4 module large
 	
 	private static final int GREEN_BLACK = 0xFF_00_60_00;
 	private static final int GREEN_WHITE = 0xFF_90_FF_90;
@@ -119,20 +125,14 @@ public final class Helpers {
 	 */
 	public static void show(int[][] matrix, int scale) {
 		BufferedImage qrCode = Helpers.matrixToImage(matrix);
-		BufferedImage image = reshape(qrCode, scale, 4*scale);
-		SwingUtilities.invokeLater(() -> {
-			JFrame editorFrame = new JFrame("QR Code");
-			editorFrame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-
-			ImageIcon imageIcon = new ImageIcon(image);
-			JLabel jLabel = new JLabel();
-			jLabel.setIcon(imageIcon);
-			editorFrame.getContentPane().add(jLabel, BorderLayout.CENTER);
+		show(reshape(qrCode, scale, QRCodeInfos.QUIET_ZONE*scale));
+	}
 
-			editorFrame.pack();
-			editorFrame.setLocationRelativeTo(null);
-			editorFrame.setVisible(true);
-		});
+	/**
+	 * Same as {@link #show(int[][], int)} with a bit matrix
+	 */
+	public static void show(BitMatrix matrix, int scale) {
+		show(RasterRenderer.render(matrix, scale, QRCodeInfos.QUIET_ZONE*scale));
 	}
 
 	/**
@@ -157,6 +157,32 @@ public final class Helpers {
 	public static void writeMatrix(String name, int[][] matrix) {
 		write(name, matrixToImage(matrix));
 	}
+
+	/**
+	 * Same as {@link #writeMatrix(String, int[][])} with a bit matrix
+	 */
+	public static void writeMatrix(String name, BitMatrix matrix) {
+		try (PngWriter writer = new PngWriter(); OutputStream out = new BufferedOutputStream(new FileOutputStream(path(name)))) {
+			writer.write(matrix, 1, 0, out);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write the matrix into an SVG file, with a quiet zone of 4 modules
+	 * @param name
+	 *            the name of the file
+	 * @param matrix
+	 *            the matrix to write
+	 */
+	public static void writeSvg(String name, BitMatrix matrix) {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path(name, ".svg")), StandardCharsets.UTF_8))) {
+			new SvgRenderer().write(matrix, SCALE, out);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 	
 	/*
 	 * ================================================ 
@@ -166,6 +192,25 @@ public final class Helpers {
 	 */
 
 
+	/**
+	 * Shows an image in a new window
+	 */
+	private static void show(BufferedImage image) {
+		SwingUtilities.invokeLater(() -> {
+			JFrame editorFrame = new JFrame("QR Code");
+			editorFrame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+
+			ImageIcon imageIcon = new ImageIcon(image);
+			JLabel jLabel = new JLabel();
+			jLabel.setIcon(imageIcon);
+			editorFrame.getContentPane().add(jLabel, BorderLayout.CENTER);
+
+			editorFrame.pack();
+			editorFrame.setLocationRelativeTo(null);
+			editorFrame.setVisible(true);
+		});
+	}
+
 	/**
 	 * Transform an image into a 2 dimensional array with the corresponding pixel
 	 * 
@@ -192,14 +237,7 @@ public final class Helpers {
 	 * @return The image of the QR code
 	 */
 	private static BufferedImage matrixToImage(int[][] matrix) {
-		BufferedImage image = new BufferedImage(matrix.length, matrix[0].length, BufferedImage.TYPE_INT_ARGB);
-		for (int x = 0; x < matrix.length; x++) {
-			for (int y = 0; y < matrix[0].length; y++) {
-				image.setRGB(x, y, matrix[x][y]);
-			}
-		}
-
-		return image;
+		return RasterRenderer.toImage(matrix);
 	}
 
 	/**
@@ -210,14 +248,9 @@ public final class Helpers {
 	 *            the image to write on disk
 	 */
 	private static void write(String name, BufferedImage image) {
-		String projectPath = System.getProperty("user.dir");
 		try {
 			// Output file path
-			String path = projectPath + SEP +  PATH_HEADER + name;
-			if (!name.contains(".png")) {
-				path = path + ".png";
-			}
-			File output_file = new File(path);
+			File output_file = new File(path(name));
 
 			// Writing to file taking type and path as
 			ImageIO.write(image, "png", output_file);
@@ -229,6 +262,26 @@ public final class Helpers {
 
 	}
 
+	/**
+	 * @return the path of the file of the given name in the images directory, ending by .png
+	 */
+	private static String path(String name) {
+		return path(name, ".png");
+	}
+
+	/**
+	 * @return the path of the file of the given name in the images directory, ending by the
+	 *         given extension
+	 */
+	private static String path(String name, String extension) {
+		String projectPath = System.getProperty("user.dir");
+		String path = projectPath + SEP +  PATH_HEADER + name;
+		if (!name.contains(extension)) {
+			path = path + extension;
+		}
+		return path;
+	}
+
 	/**
 	 * Read an Image from a file from the images directory
 	 * 
@@ -257,46 +310,7 @@ public final class Helpers {
 	}
 
 	protected static BufferedImage reshape(BufferedImage image, int scale, int borderSize) {
-		if (image.getHeight() != image.getWidth()) {
-			throw new IllegalArgumentException("The image must be squared");
-		}
-		int previousSize = image.getWidth();
-		int size = previousSize * scale + borderSize * 2;
-		BufferedImage ehancedIm = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-
-		/*
-		 * Border
-		 */
-		for (int i = 0; i < size; i++) {
-			for (int j = 0; j < borderSize; j++) {
-				ehancedIm.setRGB(i, j, BACKGROUND_COLOR);
-				ehancedIm.setRGB(i, j + size - borderSize, BACKGROUND_COLOR);
-				if (i >= borderSize && i < size - borderSize) {
-					ehancedIm.setRGB(j, i, BACKGROUND_COLOR);
-					ehancedIm.setRGB(j + size - borderSize, i, BACKGROUND_COLOR);
-				}
-			}
-		}
-
-		/*
-		 * Scaling
-		 */
-		for (int x = 0; x < previousSize; x++) {
-			for (int y = 0; y < previousSize; y++) {
-
-				int color = image.getRGB(x, y);
-				int startX = x * scale + borderSize;
-				int startY = y * scale + borderSize;
-
-				for (int i = startX; i < startX + scale; i++) {
-					for (int j = startY; j < startY + scale; j++) {
-						ehancedIm.setRGB(i, j, color);
-					}
-				}
-			}
-		}
-
-		return ehancedIm;
+		return RasterRenderer.scale(image, scale, borderSize);
 	}
 
 }
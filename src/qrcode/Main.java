@@ -31,10 +31,10 @@ public class Main {
 	public static void generateQRCodeFromInput() {
 
 		int best_version = QRCodeInfos.bestVersion(INPUT, LVL);
-		boolean[] encodedData = DataEncoding.byteModeEncoding(INPUT, best_version, LVL);
-		int[][] qrCode = MatrixConstruction.renderQRCodeMatrix(best_version, encodedData, LVL);
+		BitBuffer encodedData = DataEncoding.encode(INPUT, best_version, LVL);
+		BitMatrix qrCode = MatrixConstruction.renderQRCode(best_version, encodedData, LVL);
 
-		int scaling = 400 / qrCode.length;
+		int scaling = 400 / qrCode.size();
 		Helpers.show(qrCode, scaling);
 
 	}
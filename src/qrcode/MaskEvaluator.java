@@ -0,0 +1,218 @@
+package qrcode;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Scores the 8 masks of a QR code from a single placement of the data.
+ *
+ * The data is placed once without mask. The candidate of mask m is then obtained by a XOR
+ * of this placement with the precomputed plane of mask m (see MatrixTemplate.maskPlane)
+ * into a scratch matrix, followed by the 15 modules of format information. The candidates
+ * are exactly the matrices of renderQRCode, so the chosen mask is the same.
+ *
+ * The best mask is searched by branch and bound: the masks are tried from the one that
+ * won most often for the version, and the evaluation of a mask stops as soon as its partial
+ * score shows that it cannot beat the best mask found so far.
+ *
+ * Every search records its winner, the bounded one included. A bounded search keeps its
+ * last candidate for the other masks in turn, so that a mask outside the current leaders
+ * can win and join them: the order is learned even when the 8 masks are never all scored.
+ *
+ * An evaluator is not thread safe, it may be reused for other data of the same version.
+ * Only bestMask(Executor) uses other threads, each with its own scratch matrices.
+ */
+final class MaskEvaluator {
+
+	/*
+	 * WINS[version][mask]: number of times the mask was the best one. The counters are
+	 * only used to order the candidates, so lost updates between threads do not matter.
+	 */
+	private static final int[][] WINS = new int[41][8];
+
+	private final MatrixTemplate template;
+
+	/**
+	 * The function patterns and the data without mask
+	 */
+	private final BitMatrix unmasked;
+
+	private final BitMatrix scratch;
+
+	private final PenaltyScorer scorer;
+
+	private char lvl;
+
+	/**
+	 * The masks in the order they are tried
+	 */
+	private final int[] order = new int[8];
+
+	MaskEvaluator(int version) {
+		template = MatrixTemplate.of(version);
+		unmasked = new BitMatrix(template.size());
+		scratch = new BitMatrix(template.size());
+		scorer = new PenaltyScorer(template.size());
+	}
+
+	int version() {
+		return template.version;
+	}
+
+	/**
+	 * Place the data without mask, replacing the previous data
+	 *
+	 * @param data
+	 *            the data to be written on the QR code
+	 * @param lvl
+	 *           the error correction level (L, M, Q, H)
+	 */
+	void place(BitBuffer data, char lvl) {
+		this.lvl = lvl;
+		template.copyInto(unmasked, 0, lvl);
+		MatrixConstruction.addDataInformation(unmasked, template, data, -1);
+	}
+
+	/**
+	 * Write the QR code of a mask into a matrix of the same size
+	 *
+	 * @param mask
+	 *            the mask, between 0 and 7
+	 * @param target
+	 *            the matrix receiving the QR code
+	 */
+	void candidate(int mask, BitMatrix target) {
+		target.setXor(unmasked, template.maskPlane(mask));
+		MatrixTemplate.addFormatInformation(target, mask, lvl);
+	}
+
+	/**
+	 * @return the penalty score of the QR code with the given mask
+	 */
+	int evaluate(int mask) {
+		candidate(mask, scratch);
+		return scorer.evaluate(scratch);
+	}
+
+	/**
+	 * @return the mask giving the lowest penalty, the lowest mask in case of tie
+	 */
+	int bestMask() {
+		return bestMask(8);
+	}
+
+	/**
+	 * Search the best mask among the candidates only: the candidates - 1 masks that won most
+	 * often, then one of the other masks, taken in turn from one call to the next. With less
+	 * than 8 candidates, the mask may not be the best one. The winner is recorded either way.
+	 *
+	 * @param candidates
+	 *            the number of masks to evaluate, between 1 and 8
+	 * @return the mask giving the lowest penalty among the candidates, the lowest mask in
+	 *         case of tie
+	 */
+	int bestMask(int candidates) {
+		if (candidates < 1 || candidates > 8) {
+			throw new IllegalArgumentException("The number of candidates has to be between 1 and 8");
+		}
+		int[] wins = WINS[template.version];
+		sortByWins(wins);
+		if (candidates > 1 && candidates < 8) {
+			// The number of searches recorded so far picks the mask of the last slot
+			int searches = 0;
+			for (int count : wins) {
+				searches += count;
+			}
+			int last = candidates - 1;
+			int other = last + Integer.remainderUnsigned(searches, 8 - last);
+			int swap = order[last];
+			order[last] = order[other];
+			order[other] = swap;
+		}
+
+		int mask = -1;
+		int min = Integer.MAX_VALUE;
+		for (int c = 0; c < candidates; ++c) {
+			int i = order[c];
+			// A tie only wins over a higher mask
+			int limit = (mask < 0) ? Integer.MAX_VALUE : (i < mask) ? min : min - 1;
+			candidate(i, scratch);
+			int var = scorer.evaluate(scratch, limit);
+			if (var <= limit) {
+				min = var;
+				mask = i;
+			}
+		}
+		++wins[mask];
+		return mask;
+	}
+
+	/**
+	 * Same as {@link #bestMask()}, the masks being scored concurrently by tasks run on
+	 * the executor. Each task takes every nbTasks-th mask in the order of the wins, with its
+	 * own scratch matrix and early abort. A mask is only dropped in favor of a better mask
+	 * of its own task, so the result does not depend on the scheduling.
+	 *
+	 * @param executor
+	 *            the executor running the tasks, e.g. ForkJoinPool.commonPool()
+	 * @return the mask giving the lowest penalty, the lowest mask in case of tie
+	 */
+	int bestMask(Executor executor) {
+		sortByWins(WINS[template.version]);
+
+		int nbTasks = Math.min(8, Runtime.getRuntime().availableProcessors());
+		int[] scores = new int[8];
+		Arrays.fill(scores, Integer.MAX_VALUE);
+		CompletableFuture<?>[] tasks = new CompletableFuture<?>[nbTasks];
+		for (int t = 0; t < nbTasks; ++t) {
+			int first = t;
+			tasks[t] = CompletableFuture.runAsync(() -> evaluate(first, nbTasks, scores), executor);
+		}
+		CompletableFuture.allOf(tasks).join();
+
+		int mask = 0;
+		for (int i = 1; i < 8; ++i) {
+			if (scores[i] < scores[mask]) mask = i;
+		}
+		++WINS[template.version][mask];
+		return mask;
+	}
+
+	/**
+	 * Score the masks order[first], order[first + step], ... into scores, a mask beaten by
+	 * another of them keeping Integer.MAX_VALUE
+	 */
+	private void evaluate(int first, int step, int[] scores) {
+		BitMatrix matrix = new BitMatrix(template.size());
+		PenaltyScorer taskScorer = new PenaltyScorer(template.size());
+
+		int mask = -1;
+		int min = Integer.MAX_VALUE;
+		for (int c = first; c < 8; c += step) {
+			int i = order[c];
+			int limit = (mask < 0) ? Integer.MAX_VALUE : (i < mask) ? min : min - 1;
+			candidate(i, matrix);
+			int var = taskScorer.evaluate(matrix, limit);
+			if (var <= limit) {
+				min = var;
+				mask = i;
+			}
+		}
+		if (mask >= 0) scores[mask] = min;
+	}
+
+	/**
+	 * Order the masks by decreasing number of wins, then by increasing number
+	 */
+	private void sortByWins(int[] wins) {
+		for (int i = 0; i < 8; ++i) {
+			int j = i;
+			while (j > 0 && wins[order[j - 1]] < wins[i]) {
+				order[j] = order[j - 1];
+				--j;
+			}
+			order[j] = i;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package qrcode;
 
+import java.util.concurrent.Executor;
+
 public class MatrixConstruction {
 	
 	/*
@@ -11,10 +13,34 @@ public class MatrixConstruction {
 	 * 
 	 * both needs to have their alpha component to 255
 	 */
-	static final int ALPHA = 0xFF_00_00_00;
 	private static final int W = 0xFF_FF_FF_FF;
 	private static final int B = 0xFF_00_00_00;
 
+	/**
+	 * The ways the mask of a QR code can be chosen.
+	 *
+	 * BEST evaluates the 8 masks (with early abort) and gives the mask of least penalty,
+	 * the same as findBestMasking.
+	 *
+	 * BOUNDED_LATENCY only evaluates BOUNDED_CANDIDATES masks: those that won most often for
+	 * the version, the last one being replaced in turn by each of the others so that the
+	 * wins keep being learned. The work is capped, but the mask may not be the best one. The
+	 * QR code is valid in both cases.
+	 */
+	public enum MaskSelection {
+		BEST, BOUNDED_LATENCY
+	}
+
+	/**
+	 * Number of masks evaluated by MaskSelection.BOUNDED_LATENCY
+	 */
+	public static final int BOUNDED_CANDIDATES = 3;
+
+	/**
+	 * Version above which the masks are scored in parallel when an executor is given
+	 */
+	public static final int PARALLEL_VERSION_THRESHOLD = 25;
+
 	/**
 	 * Create the matrix of a QR code with the given data.
 	 *
@@ -30,11 +56,30 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data, int mask, char lvl) {
+		return renderQRCodeMatrix(version, BitBuffer.of(data), mask, lvl);
+	}
 
-		int[][] matrix = constructMatrix(version, mask, lvl);
-
-		addDataInformation(matrix, data, mask);
+	/**
+	 * Same as {@link #renderQRCodeMatrix(int, boolean[], int, char)} with the data given as
+	 * a bit buffer, e.g. by DataEncoding.byteModeBits.
+	 *
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, int mask, char lvl) {
+		return renderQRCode(version, data, mask, lvl).toArray();
+	}
 
+	/**
+	 * Same as {@link #renderQRCodeMatrix(int, BitBuffer, int, char)}, the QR code being
+	 * given as a bit matrix of one bit per module
+	 *
+	 * @return The matrix of the QR code
+	 */
+	public static BitMatrix renderQRCode(int version, BitBuffer data, int mask, char lvl) {
+		MatrixTemplate template = MatrixTemplate.of(version);
+		BitMatrix matrix = new BitMatrix(template.size());
+		template.copyInto(matrix, mask, lvl);
+		addDataInformation(matrix, template, data, mask);
 		return matrix;
 	}
 
@@ -52,37 +97,73 @@ public class MatrixConstruction {
 	 * @return The matrix of the QR code
 	 */
 	public static int[][] renderQRCodeMatrix(int version, boolean[] data, char lvl) {
+		return renderQRCodeMatrix(version, BitBuffer.of(data), lvl);
+	}
+
+	/**
+	 * Same as {@link #renderQRCodeMatrix(int, boolean[], char)} with the data given as a bit
+	 * buffer, e.g. by DataEncoding.byteModeBits.
+	 *
+	 * @return The matrix of the QR code
+	 */
+	public static int[][] renderQRCodeMatrix(int version, BitBuffer data, char lvl) {
+		return renderQRCode(version, data, lvl).toArray();
+	}
+
+	/**
+	 * Same as {@link #renderQRCodeMatrix(int, BitBuffer, char)}, the QR code being given as
+	 * a bit matrix of one bit per module
+	 *
+	 * @return The matrix of the QR code
+	 */
+	public static BitMatrix renderQRCode(int version, BitBuffer data, char lvl) {
 
 		int mask = findBestMasking(version, data, lvl);
 
-		return renderQRCodeMatrix(version, data, mask, lvl);
+		return renderQRCode(version, data, mask, lvl);
 	}
 
 	/**
-	 * Create a matrix (2D array) ready to accept data for a given version and mask
+	 * Same as {@link #renderQRCode(int, BitBuffer, char)}, the 8 masks being scored
+	 * concurrently on the given executor when the version is higher than
+	 * {@link #PARALLEL_VERSION_THRESHOLD}. The mask is the same as the sequential one,
+	 * ties going to the lowest mask.
 	 *
-	 * @param version
-	 *            the version number of QR code (has to be between 1 and 4 included)
-	 * @param mask
-	 *            the mask id to use to mask the data modules. Has to be between 0
-	 *            and 7 included to have a valid matrix. If the mask id is not
-	 *            valid, the modules would not be not masked later on, hence the
-	 *            QRcode would not be valid
-	 * @param lvl
-	 *           un charactère qui définie le niveau de correction (L, M, Q, H)
-	 * @return the qrcode with the patterns and format information modules
-	 *         initialized. The modules where the data should be remain empty.
-	 */
-	private static int[][] constructMatrix(int version, int mask, char lvl) {
-		int[][] matrix = initializeMatrix(version);
-		addFinderPatterns(matrix);
-		addAlignmentPatterns(matrix, version);
-		addTimingPatterns(matrix);
-		addDarkModule(matrix);
-		addFormatInformation(matrix, mask, lvl);
-		if (version > 6) addFormat(matrix, version);
-		return matrix;
+	 * @param executor
+	 *           the executor scoring the masks (e.g. ForkJoinPool.commonPool()), or null
+	 *           to score them sequentially
+	 * @return The matrix of the QR code
+	 */
+	public static BitMatrix renderQRCode(int version, BitBuffer data, char lvl, Executor executor) {
+		if (executor == null || version <= PARALLEL_VERSION_THRESHOLD) {
+			return renderQRCode(version, data, lvl);
+		}
+
+		MaskEvaluator evaluator = new MaskEvaluator(version);
+		evaluator.place(data, lvl);
+		int mask = evaluator.bestMask(executor);
 
+		return renderQRCode(version, data, mask, lvl);
+	}
+
+	/**
+	 * Same as {@link #renderQRCode(int, BitBuffer, char)} with a chosen way to select the
+	 * mask
+	 *
+	 * @param selection
+	 *            the way the mask is chosen, see {@link MaskSelection}
+	 * @return The matrix of the QR code
+	 */
+	public static BitMatrix renderQRCode(int version, BitBuffer data, char lvl, MaskSelection selection) {
+		if (selection == MaskSelection.BEST) {
+			return renderQRCode(version, data, lvl);
+		}
+
+		MaskEvaluator evaluator = new MaskEvaluator(version);
+		evaluator.place(data, lvl);
+		int mask = evaluator.bestMask(BOUNDED_CANDIDATES);
+
+		return renderQRCode(version, data, mask, lvl);
 	}
 
 	/**
@@ -90,7 +171,7 @@ public class MatrixConstruction {
 	 * given version
 	 * 
 	 * @param version
-	 *            the version number of the qr code (has to be between 1 and 4
+	 *            the version number of the qr code (has to be between 1 and 40
 	 *            included
 	 * @return an empty matrix
 	 */
@@ -122,31 +203,11 @@ public class MatrixConstruction {
 	 * @param matrix matrice
 	 * @param version version
 	 */
-	private static void addAlignmentPatterns(int[][] matrix, int version) {
-		if (version < 2) return;
-		if (version < 7) {
-			int index = matrix.length;
-			pattern(matrix, index-7, index-7, 2);
-			return;
-		}
-
-		int index = matrix.length;
-		int nb = QRCodeInfos.nbCoordonnees(version);
-		int[] coordonnees = new int[nb+1];
-
-		coordonnees[0] = 6;
-		coordonnees[nb] = index-7;
-
-		for (int i = 1; i < nb; ++i) {
-			coordonnees[i] = QRCodeInfos.COORDONNEES[i-1][version-(i*7)];
+	static void addAlignmentPatterns(int[][] matrix, int version) {
+		// Les centres qui chevaucheraient un finder pattern sont déjà exclus par QRCodeSpec
+		for (int i = 0; i < QRCodeSpec.nbAlignmentPatterns(version); ++i) {
+			pattern(matrix, QRCodeSpec.alignmentCol(version, i), QRCodeSpec.alignmentLine(version, i), 2);
 		}
-
-		for (int i = 0; i < nb+1; ++i) {
-			for (int j = 0; j < nb+1; ++j) {
-				patternSup(matrix, coordonnees[i], coordonnees[j], 2);
-			}
-		}
-
 	}
 
 	/**
@@ -184,14 +245,17 @@ public class MatrixConstruction {
 	 * @param lvl
 	 *           un charactère qui définie le niveau de correction (L, M, Q, H)
 	 */
-	private static void addFormatInformation(int[][] matrix, int mask, char lvl) {
-		boolean[] tabFormat = QRCodeInfos.getFormatSequence(mask, lvl);
+	static void addFormatInformation(int[][] matrix, int mask, char lvl) {
+		if (mask < 0 || mask > 7) {
+			throw new IllegalArgumentException("The mask has to be between 0 and 7");
+		}
+		int word = QRCodeSpec.formatWord(QRCodeInfos.lvlIndex(lvl), mask);
 		int matrixSize = matrix.length;
 
 		//Pattern horizontal
 		int cpt = 0;
 		for (int i = 0; i < matrixSize; ++i) {
-			matrix[i][8] = (tabFormat[cpt]) ? B : W;
+			matrix[i][8] = ((word >> (14 - cpt)) & 1) != 0 ? B : W;
 			++cpt;
 
 			if (i == 5) ++i;
@@ -201,7 +265,7 @@ public class MatrixConstruction {
 		//Pattern vertical
 		cpt = 0;
 		for (int j = matrixSize - 1; j >= 0; --j) {
-			matrix[8][j] = (tabFormat[cpt]) ? B : W;
+			matrix[8][j] = ((word >> (14 - cpt)) & 1) != 0 ? B : W;
 			++cpt;
 
 			if (j == matrixSize - 7) j = 9;
@@ -234,34 +298,6 @@ public class MatrixConstruction {
 		}
 	}
 
-	/**
-	 * Méthode analogue à la méthode pattern dans le fichier MatrixConstruction.java
-	 * mais celle ci vérifie en plus que ne va pas se superposer sur un pattern existant.
-	 *
-	 * @param matrix
-	 *			  matrice
-	 * @param col
-	 *            colonne de la matrice
-	 * @param line
-	 *            ligne de la matrice
-	 * @param taille
-	 *            taille du pattern à insérer dans la matrice
-	 */
-	public static void patternSup(int[][]matrix, int col, int line, int taille) {
-		int couleur;
-		int step = 0;
-
-		for (int j = col-taille; j <= col+taille; ++j )
-			for (int i = line-taille; i <= line+taille; ++i)
-				if ((matrix[i][j] & ALPHA) != 0) return;
-
-		for (int i = taille; i >= taille-2; --i) {
-			couleur = (step % 2 == 0) ? B : W;
-			carre(matrix, col, line, i, couleur);
-			++step;
-		}
-	}
-	
 	/**
 	 * Ajoute un carré noir ou blanc d'une taille "taille", centré en (col,line).
 	 * 
@@ -337,12 +373,69 @@ public class MatrixConstruction {
 	 *            the data to add
 	 */
 	public static void addDataInformation(int[][] matrix, boolean[] data, int mask) {
-		
-		int cpt = 0;
-		
-		for (int col = matrix.length - 1; col > 0; col -= 4) {
-			cpt = getUpCode(matrix, data, col, mask, cpt);
-			cpt = getDownCode(matrix, data, col - 2, mask, cpt);
+		addDataInformation(matrix, BitBuffer.of(data), mask);
+	}
+
+	/**
+	 * Same as {@link #addDataInformation(int[][], boolean[], int)} with the data given as a
+	 * bit buffer. The matrix has to contain the function patterns of its version: the data
+	 * modules are read from the placement map of the version (see MatrixTemplate), so no
+	 * free module is searched for and the mask is read from precomputed bits.
+	 */
+	public static void addDataInformation(int[][] matrix, BitBuffer data, int mask) {
+		MatrixTemplate template = MatrixTemplate.of((matrix.length - 17) / 4);
+		int[] placement = template.placement;
+		byte[] maskBits = template.maskBits;
+		int maskBit = (mask >= 0 && mask <= 7) ? 1 << mask : 0;
+
+		// Les bits au-delà des données (remainder bits) valent 0
+		int count = Math.min(data.size(), placement.length);
+		int i = 0;
+		for (; i < count; i += 32) {
+			int n = Math.min(32, count - i);
+			int bits = data.getBits(i, n) << (32 - n);
+			for (int k = 0; k < n; ++k, bits <<= 1) {
+				int p = placement[i + k];
+				boolean dark = (bits < 0) ^ ((maskBits[i + k] & maskBit) != 0);
+				matrix[p >>> 8][p & 0xFF] = dark ? B : W;
+			}
+		}
+		for (i = count; i < placement.length; ++i) {
+			int p = placement[i];
+			matrix[p >>> 8][p & 0xFF] = ((maskBits[i] & maskBit) != 0) ? B : W;
+		}
+	}
+
+	/**
+	 * Same as {@link #addDataInformation(int[][], BitBuffer, int)} on a bit matrix whose
+	 * data modules are light, as left by MatrixTemplate.copyInto: only the dark modules are
+	 * written.
+	 *
+	 * @param template
+	 *            the template of the version of the matrix
+	 */
+	static void addDataInformation(BitMatrix matrix, MatrixTemplate template, BitBuffer data, int mask) {
+		int[] placement = template.placement;
+		byte[] maskBits = template.maskBits;
+		int maskBit = (mask >= 0 && mask <= 7) ? 1 << mask : 0;
+
+		int count = Math.min(data.size(), placement.length);
+		int i = 0;
+		for (; i < count; i += 32) {
+			int n = Math.min(32, count - i);
+			int bits = data.getBits(i, n) << (32 - n);
+			for (int k = 0; k < n; ++k, bits <<= 1) {
+				if ((bits < 0) ^ ((maskBits[i + k] & maskBit) != 0)) {
+					int p = placement[i + k];
+					matrix.set(p >>> 8, p & 0xFF, true);
+				}
+			}
+		}
+		for (i = count; i < placement.length; ++i) {
+			if ((maskBits[i] & maskBit) != 0) {
+				int p = placement[i];
+				matrix.set(p >>> 8, p & 0xFF, true);
+			}
 		}
 	}
 
@@ -357,7 +450,7 @@ public class MatrixConstruction {
 	 *            le chiffre du masque
 	 * @return un booléen qui vaut vrai si le module en (x, y) doit etre masqué.
 	 */
-	private static boolean getColorMask(int x, int y, int mask) {
+	static boolean getColorMask(int x, int y, int mask) {
 		
 		boolean bool = false;
 		int i = ((x * y) % 2) + (x * y) % 3;
@@ -391,82 +484,10 @@ public class MatrixConstruction {
 		return bool;
 	}
 	
-	/**
-	 * Place la moitié des données dans le QRCode en partant du bas vers le haut. 
-	 * Cette méthode saute le timing pattern vertical.
-	 * 
-	 * @param matrix
-	 *            la matrice prete à recvoir les données
-	 * @param data
-	 *            les données à mettre dans la matrice contenu dans un tableau de booléen
-	 * @param col
-	 *            indique la colonne à partir de laquel on ajoute les données
-	 * @param mask
-	 *            le chiffre du masque
-	 * @param cpt 
-	 *            un compteur permettant de coordonner les deux méthodes getUpCode et
-	 *            getDownCode
-	 * @return la matrice avec une double colonne de données ajoutées.
-	 */
-	private static int getUpCode(int[][] matrix, boolean[] data, int col, int mask, int cpt) {
-		
-		int dataSize = data.length;
-		if (col <= 4) --col;    // Permet de sauter le timing patter vertical
-		
-		for (int i = matrix.length - 1; i >= 0; --i) {
-			for (int c = col; c >= col - 1; --c) {
-				if (matrix[c][i] != 0) continue;
-				
-				boolean dataBit = cpt < dataSize && data[cpt];
-				++cpt;
-				
-				int color = maskColor(c, i, dataBit, mask);
-				matrix[c][i] = color;
-			}
-		}
-		
-		return cpt;
-	}
-	
-	/**
-	 * Place l'autre moitié des données dans le QRCode en partant du haut vers le bas. 
-	 * Cette méthode saute le timing pattern vertical.
-	 * 
-	 * @param matrix
-	 *            la matrice prete à recvoir les données
-	 * @param data
-	 *            les données à mettre dans la matrice contenu dans un tableau de booléen
-	 * @param col
-	 *            indique la colonne à partir de laquel on ajoute les données
-	 * @param mask
-	 *            le chiffre du masque
-	 * @param cpt 
-	 *            un compteur permettant de coordonner les deux méthodes getUpCode et
-	 *            getDownCode
-	 * @return la matrice avec une double colonne de données ajoutées.
-	 */
-	private static int getDownCode(int[][] matrix, boolean[] data, int col, int mask, int cpt) {
-		
-		int dataSize = data.length;
-		if (col <= 6) --col;   // Permet de sauter le timing patter vertical
-		
-		for (int i = 0; i <= matrix.length - 1; ++i) {
-			for (int c = col; c >= col - 1; --c) {
-				if (matrix[c][i] != 0) continue;
-				boolean dataBit = cpt < dataSize && data[cpt];
-				++cpt;
-				
-				int color = maskColor(c, i, dataBit, mask);
-				matrix[c][i] = color;
-			}
-		}
-		
-		return cpt;
-	}
-
 	/**
 	 * Find the best mask to apply to a QRcode so that the penalty score is
-	 * minimized. Compute the penalty score with evaluate
+	 * minimized. Compute the penalty score of the 8 masks from a single placement of the
+	 * data, see MaskEvaluator
 	 *
 	 * @param data
 	 * 			 data
@@ -474,18 +495,10 @@ public class MatrixConstruction {
 	 *           un charactère qui définie le niveau de correction (L, M, Q, H)
 	 * @return the mask number that minimize the penalty
 	 */
-	private static int findBestMasking(int version, boolean[] data, char lvl) {
-		int mask = 0, var;
-		int min = evaluate(renderQRCodeMatrix(version, data, 0, lvl));
-
-		for (int i = 1; i < 8; ++i) {
-			var = evaluate(renderQRCodeMatrix(version, data, i, lvl));
-			if (var < min) {
-				min = var;
-				mask = i;
-			}
-		}
-		return mask;
+	private static int findBestMasking(int version, BitBuffer data, char lvl) {
+		MaskEvaluator evaluator = new MaskEvaluator(version);
+		evaluator.place(data, lvl);
+		return evaluator.bestMask();
 	}
 
 	/**
@@ -504,6 +517,18 @@ public class MatrixConstruction {
 		return penalite[0];
 	}	
 	
+	/**
+	 * Same as {@link #evaluate(int[][])} on a bit matrix, with the same score. The rules
+	 * are computed on 64 modules at a time, see PenaltyScorer.
+	 *
+	 * @param matrix
+	 *            the QR code as a bit matrix
+	 * @return the penalty score obtained by the QR code, lower the better
+	 */
+	public static int evaluate(BitMatrix matrix) {
+		return new PenaltyScorer(matrix.size()).evaluate(matrix);
+	}
+
 	/**
 	 * Calcule les points de pénalités de la première forme (plus de 5 modules identique
 	 * à la suite). Elle fait appel à la méthode penalite1_bis pour une meilleure 
@@ -654,8 +679,7 @@ public class MatrixConstruction {
 	private static void penalite4(int[][] matrix, int[] penalite) {
 		
 		int size = matrix.length;
-		double nbModules = size * size;
-		double blackModules = 0;
+		int blackModules = 0;
 		
 		for (int i = 0; i < size; ++i) {
 			for (int[] ints : matrix) {
@@ -665,7 +689,22 @@ public class MatrixConstruction {
 			}
 		}
 		
-		int pourcentage = (int) ((blackModules / nbModules) * 100);
+		penalite[0] += penalite4(blackModules, size * size);
+	}
+
+	/**
+	 * Calcule les points de pénalités de la quatrième forme à partir du nombre de modules
+	 * noirs.
+	 *
+	 * @param blackModules
+	 *            le nombre de modules noirs
+	 * @param nbModules
+	 *            le nombre total de modules
+	 * @return la pénalité calculée
+	 */
+	static int penalite4(int blackModules, int nbModules) {
+		
+		int pourcentage = (int) (((double) blackModules / nbModules) * 100);
 		
 		int pourcentage1 = (pourcentage / 5) * 5;
 		int pourcentage2 = ((pourcentage / 5) + 1) * 5;
@@ -676,26 +715,23 @@ public class MatrixConstruction {
 		if (pourcentage1 < 0) pourcentage1 = - pourcentage1;
 		if (pourcentage2 < 0) pourcentage2 = - pourcentage2;
 		
-		if (pourcentage1 < pourcentage2) {
-			penalite[0] += (2 * pourcentage1);
-		} else {
-			penalite[0] += (2 * pourcentage2);
-		}
+		return 2 * Math.min(pourcentage1, pourcentage2);
 	}
 
 	/**
 	 * Ajoute 18 bit d'information sur la version dans le QRCode ce qui est nécessaire
 	 * pour les versions supérieures ou égales à 7.
 	 */
-	private static void addFormat(int[][] matrix, int version) {
-		boolean[] tabFormat = QRCodeInfos.format(version);
+	static void addFormat(int[][] matrix, int version) {
+		int word = QRCodeSpec.versionWord(version);
 		int size = matrix.length;
 
 		int cpt = 0;
 		for (int i = 0; i < 6; ++i) {
 			for (int j = 0; j < 3; ++j) {
-				matrix[i][size-11+j] = (tabFormat[cpt]) ? B : W;
-				matrix[size-11+j][i] = (tabFormat[cpt]) ? B : W;
+				int color = ((word >> cpt) & 1) != 0 ? B : W;
+				matrix[i][size-11+j] = color;
+				matrix[size-11+j][i] = color;
 				++cpt;
 			}
 		}
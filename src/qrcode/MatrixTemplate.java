@@ -0,0 +1,183 @@
+package qrcode;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Function patterns of a QR code version: finder, alignment and timing patterns, dark
+ * module and version information. The modules of the format information are reserved and
+ * left white, they are the only ones depending on the mask and the correction level.
+ *
+ * The templates are immutable and built once per version on first use, so that the
+ * matrices built by findBestMasking start from a bulk copy. The cache is read without lock:
+ * two threads asking for a new version at the same time may both build it, only one of the
+ * templates being kept.
+ */
+final class MatrixTemplate {
+
+	/**
+	 * CACHE[version]: the template of the version, null until first used (a template of
+	 * version 40 holds about 160 kB, mostly its placement map)
+	 */
+	private static final AtomicReferenceArray<MatrixTemplate> CACHE = new AtomicReferenceArray<>(41);
+
+	final int version;
+
+	/**
+	 * The dark modules of the function patterns
+	 */
+	private final BitMatrix modules;
+
+	/**
+	 * The modules of the function patterns and of the format information, i.e. those that
+	 * cannot receive data
+	 */
+	final BitMatrix reserved;
+
+	/**
+	 * Coordinates of the data modules in the order of the data bits, packed as x << 8 | y
+	 */
+	final int[] placement;
+
+	/**
+	 * maskBits[i]: bit m is set when mask m inverts the module placement[i]
+	 */
+	final byte[] maskBits;
+
+	/**
+	 * maskPlanes[m]: the data modules inverted by mask m, the other modules being light
+	 */
+	private final BitMatrix[] maskPlanes = new BitMatrix[8];
+
+	private MatrixTemplate(int version) {
+		this.version = version;
+		// The patterns are drawn only once, with the methods working on int[][]
+		int[][] matrix = MatrixConstruction.initializeMatrix(version);
+		MatrixConstruction.addFinderPatterns(matrix);
+		MatrixConstruction.addAlignmentPatterns(matrix, version);
+		MatrixConstruction.addTimingPatterns(matrix);
+		MatrixConstruction.addDarkModule(matrix);
+		// Reserve the format modules, written afterwards for each mask
+		MatrixConstruction.addFormatInformation(matrix, 0, 'L');
+		if (version > 6) MatrixConstruction.addFormat(matrix, version);
+
+		int size = matrix.length;
+		modules = BitMatrix.of(matrix);
+		reserved = new BitMatrix(size);
+		for (int x = 0; x < size; ++x) {
+			for (int y = 0; y < size; ++y) {
+				if (matrix[x][y] != 0) reserved.set(x, y, true);
+			}
+		}
+
+		placement = placementGenerator(reserved);
+		maskBits = new byte[placement.length];
+		for (int i = 0; i < placement.length; ++i) {
+			int x = placement[i] >>> 8, y = placement[i] & 0xFF;
+			for (int mask = 0; mask < 8; ++mask) {
+				if (MatrixConstruction.getColorMask(x, y, mask)) maskBits[i] |= 1 << mask;
+			}
+		}
+
+		for (int mask = 0; mask < 8; ++mask) {
+			maskPlanes[mask] = new BitMatrix(size);
+			for (int i = 0; i < placement.length; ++i) {
+				if ((maskBits[i] & (1 << mask)) != 0) maskPlanes[mask].set(placement[i] >>> 8, placement[i] & 0xFF, true);
+			}
+		}
+	}
+
+	/**
+	 * Walk through the matrix in zigzag, by pairs of columns from right to left, upwards
+	 * and downwards in turn, skipping the vertical timing pattern and the reserved modules.
+	 *
+	 * @return the coordinates of the data modules in the order of the bits
+	 */
+	private static int[] placementGenerator(BitMatrix reserved) {
+		int size = reserved.size();
+		int[] placement = new int[size * size];
+		int cpt = 0;
+		boolean up = true;
+
+		for (int right = size - 1; right > 0; right -= 2) {
+			if (right == 6) right = 5;
+			for (int k = 0; k < size; ++k) {
+				int y = up ? size - 1 - k : k;
+				for (int x = right; x >= right - 1; --x) {
+					if (!reserved.get(x, y)) placement[cpt++] = x << 8 | y;
+				}
+			}
+			up = !up;
+		}
+		return Arrays.copyOf(placement, cpt);
+	}
+
+	/**
+	 * @param version
+	 *            the version of the QR code, between 1 and 40
+	 * @return the template of the version, built when not in the cache
+	 */
+	static MatrixTemplate of(int version) {
+		if (version < 1 || version > 40) {
+			throw new IllegalArgumentException("The version has to be between 1 and 40");
+		}
+		MatrixTemplate template = CACHE.get(version);
+		if (template == null) {
+			CACHE.compareAndSet(version, null, new MatrixTemplate(version));
+			template = CACHE.get(version);
+		}
+		return template;
+	}
+
+	int size() {
+		return modules.size();
+	}
+
+	/**
+	 * @return the data modules inverted by the mask
+	 */
+	BitMatrix maskPlane(int mask) {
+		return maskPlanes[mask];
+	}
+
+	/**
+	 * Overwrite a matrix of the same size with the template and the format information of
+	 * the mask and correction level. The data modules are left light.
+	 */
+	void copyInto(BitMatrix matrix, int mask, char lvl) {
+		matrix.copyFrom(modules);
+		addFormatInformation(matrix, mask, lvl);
+	}
+
+	/**
+	 * Write the format information of the mask and correction level into a matrix, as
+	 * MatrixConstruction.addFormatInformation does on an int[][] matrix
+	 */
+	static void addFormatInformation(BitMatrix matrix, int mask, char lvl) {
+		if (mask < 0 || mask > 7) {
+			throw new IllegalArgumentException("The mask has to be between 0 and 7");
+		}
+		int word = QRCodeSpec.formatWord(QRCodeInfos.lvlIndex(lvl), mask);
+		int matrixSize = matrix.size();
+
+		//Pattern horizontal
+		int cpt = 0;
+		for (int i = 0; i < matrixSize; ++i) {
+			matrix.set(i, 8, ((word >> (14 - cpt)) & 1) != 0);
+			++cpt;
+
+			if (i == 5) ++i;
+			if (i == 7) i = matrixSize - 9;
+		}
+
+		//Pattern vertical
+		cpt = 0;
+		for (int j = matrixSize - 1; j >= 0; --j) {
+			matrix.set(8, j, ((word >> (14 - cpt)) & 1) != 0);
+			++cpt;
+
+			if (j == matrixSize - 7) j = 9;
+			if (j == 7) --j;
+		}
+	}
+}
@@ -0,0 +1,465 @@
+package qrcode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Write sheets of QR codes as a PDF document, placing the codes one after the other on a
+ * grid of columns x rows labels per page. Each code is drawn as vector rectangles, one per
+ * horizontal run of dark modules, with a quiet zone of QRCodeInfos.QUIET_ZONE modules.
+ *
+ * The document is streamed: the content of a page is written as its labels are added, and
+ * the page is completed and flushed as soon as it is full. The length of a content stream
+ * is an indirect object written after it, and each page is followed by its own
+ * cross-reference section, an incremental update chained to the previous one by /Prev.
+ * Nothing of a page is kept once it is written: the memory of the writer does not depend
+ * on the number of labels.
+ *
+ * Each section also holds the page tree as it is with its page, so the file is a valid
+ * document after every flushed page: a job interrupted before {@link #close()} leaves the
+ * pages completed so far readable, only the page being filled is lost. The page tree has
+ * two levels, the root listing nodes of GROUP_SIZE pages each, so that a section rewrites
+ * at most GROUP_SIZE + pages / GROUP_SIZE references.
+ *
+ * Object numbers: 1 is the catalog (written in the first section), 2 the root of the page
+ * tree, then each group of pages uses one number for its node followed by three numbers
+ * per page: its content stream, the length of the stream and the page.
+ *
+ * A writer is not thread safe.
+ */
+public final class PdfLabelWriter implements Closeable {
+
+	/**
+	 * Size of an A4 page, in points
+	 */
+	public static final float A4_WIDTH = 595.28f;
+	public static final float A4_HEIGHT = 841.89f;
+
+	private static final float DEFAULT_MARGIN = 36;
+	private static final int QUIET_ZONE = QRCodeInfos.QUIET_ZONE;
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Number of pages of a node of the page tree
+	 */
+	private static final int GROUP_SIZE = 64;
+
+	private final OutputStream out;
+	private final float pageWidth;
+	private final float pageHeight;
+	private final float margin;
+	private final int columns;
+	private final int rows;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final byte[] digits = new byte[20];
+	private int length;
+	private long written;
+
+	/*
+	 * Numbers and offsets of the objects of the section being written (the catalog, the
+	 * root, a node and a page at most), and offset of the previous cross-reference section
+	 * (-1 before the first one)
+	 */
+	private final int[] objects = new int[6];
+	private final long[] offsets = new long[6];
+	private int objectCount;
+	private long previousXref = -1;
+
+	private int pages;
+	private int labels;
+	private long streamStart;
+	private boolean closed;
+
+	/**
+	 * Create a writer of A4 pages with margins of half an inch
+	 *
+	 * @param out
+	 *            the stream receiving the document, closed by {@link #close()}
+	 * @param columns
+	 *            the number of labels on a line of a page
+	 * @param rows
+	 *            the number of lines of labels of a page
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public PdfLabelWriter(OutputStream out, int columns, int rows) throws IOException {
+		this(out, A4_WIDTH, A4_HEIGHT, DEFAULT_MARGIN, columns, rows);
+	}
+
+	/**
+	 * @param out
+	 *            the stream receiving the document, closed by {@link #close()}
+	 * @param pageWidth
+	 *            the width of the pages, in points (1/72 inch)
+	 * @param pageHeight
+	 *            the height of the pages, in points
+	 * @param margin
+	 *            the blank space around the grid of labels, in points
+	 * @param columns
+	 *            the number of labels on a line of a page
+	 * @param rows
+	 *            the number of lines of labels of a page
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public PdfLabelWriter(OutputStream out, float pageWidth, float pageHeight, float margin, int columns, int rows)
+			throws IOException {
+		if (columns < 1 || rows < 1) {
+			throw new IllegalArgumentException("The grid needs at least one column and one row");
+		}
+		if (margin < 0 || 2 * margin >= pageWidth || 2 * margin >= pageHeight) {
+			throw new IllegalArgumentException("The margins do not leave any room for the labels");
+		}
+		this.out = out;
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.margin = margin;
+		this.columns = columns;
+		this.rows = rows;
+
+		ascii("%PDF-1.4\n%");
+		// Bytes above 127: transfer tools handle the file as binary
+		for (int i = 0; i < 4; ++i) {
+			put((byte) 0xE2);
+		}
+		ascii("\n");
+	}
+
+	/**
+	 * Draw a QR code in the next cell of the grid, starting a new page if needed
+	 *
+	 * @param matrix
+	 *            the QR code
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void add(BitMatrix matrix) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("The writer is closed");
+		}
+		if (labels == 0) {
+			beginPage();
+		}
+
+		float cellWidth = (pageWidth - 2 * margin) / columns;
+		float cellHeight = (pageHeight - 2 * margin) / rows;
+		float side = Math.min(cellWidth, cellHeight);
+		float left = margin + (labels % columns) * cellWidth + (cellWidth - side) / 2;
+		float top = pageHeight - margin - (labels / columns) * cellHeight - (cellHeight - side) / 2;
+		float module = side / (matrix.size() + 2 * QUIET_ZONE);
+
+		// Coordinates in modules, the y axis going down as in the matrix
+		ascii("q ");
+		decimal(module);
+		ascii(" 0 0 ");
+		decimal(-module);
+		put((byte) ' ');
+		decimal(left);
+		put((byte) ' ');
+		decimal(top);
+		ascii(" cm\n");
+		for (int y = 0; y < matrix.size(); ++y) {
+			int x = matrix.nextModule(0, y, true);
+			while (x < matrix.size()) {
+				int end = matrix.nextModule(x, y, false);
+				integer(QUIET_ZONE + x);
+				put((byte) ' ');
+				integer(QUIET_ZONE + y);
+				put((byte) ' ');
+				integer(end - x);
+				ascii(" 1 re\n");
+				x = matrix.nextModule(end, y, true);
+			}
+		}
+		ascii("f Q\n");
+
+		if (++labels == columns * rows) {
+			endPage();
+		}
+	}
+
+	/**
+	 * @return the number of pages started so far
+	 */
+	public int pages() {
+		return pages;
+	}
+
+	/**
+	 * Complete the current page, or write an empty page tree if there is no page at all,
+	 * and close the stream
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (labels > 0) {
+			endPage();
+		} else if (pages == 0) {
+			writePageTree();
+			writeXref();
+		}
+		flush();
+		out.close();
+	}
+
+	private void beginPage() throws IOException {
+		int content = contentObject(pages);
+		beginObject(content);
+		ascii("<< /Length ");
+		integer(content + 1);
+		ascii(" 0 R >>\nstream\n");
+		streamStart = position();
+	}
+
+	/**
+	 * Write the end of the content stream, its length, the page and the page tree, then
+	 * flush the stream
+	 */
+	private void endPage() throws IOException {
+		long streamLength = position() - streamStart;
+		ascii("\nendstream\nendobj\n");
+
+		int content = contentObject(pages);
+		beginObject(content + 1);
+		integer(streamLength);
+		ascii("\nendobj\n");
+
+		beginObject(content + 2);
+		ascii("<< /Type /Page /Parent ");
+		integer(groupObject(pages / GROUP_SIZE));
+		ascii(" 0 R /MediaBox [0 0 ");
+		decimal(pageWidth);
+		put((byte) ' ');
+		decimal(pageHeight);
+		ascii("] /Resources << >> /Contents ");
+		integer(content);
+		ascii(" 0 R >>\nendobj\n");
+
+		++pages;
+		labels = 0;
+		writePageTree();
+		writeXref();
+		flush();
+		out.flush();
+	}
+
+	/**
+	 * Write the node of the last group of pages and the root of the page tree as they are
+	 * with the pages written so far, and the catalog in the first section
+	 */
+	private void writePageTree() throws IOException {
+		int groups = (pages + GROUP_SIZE - 1) / GROUP_SIZE;
+		if (groups > 0) {
+			int first = (groups - 1) * GROUP_SIZE;
+			beginObject(groupObject(groups - 1));
+			ascii("<< /Type /Pages /Parent 2 0 R /Count ");
+			integer(pages - first);
+			ascii(" /Kids [");
+			for (int page = first; page < pages; ++page) {
+				put((byte) ' ');
+				integer(contentObject(page) + 2);
+				ascii(" 0 R");
+			}
+			ascii(" ] >>\nendobj\n");
+		}
+
+		beginObject(2);
+		ascii("<< /Type /Pages /Count ");
+		integer(pages);
+		ascii(" /Kids [");
+		for (int group = 0; group < groups; ++group) {
+			put((byte) ' ');
+			integer(groupObject(group));
+			ascii(" 0 R");
+		}
+		ascii(" ] >>\nendobj\n");
+
+		if (previousXref < 0) {
+			beginObject(1);
+			ascii("<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+		}
+	}
+
+	/**
+	 * @return the number of the node of the group of pages
+	 */
+	private static int groupObject(int group) {
+		return 3 + group * (3 * GROUP_SIZE + 1);
+	}
+
+	/**
+	 * @return the number of the content stream of the page, followed by its length and the
+	 *         page itself
+	 */
+	private static int contentObject(int page) {
+		return groupObject(page / GROUP_SIZE) + 1 + 3 * (page % GROUP_SIZE);
+	}
+
+	/**
+	 * Write the cross-reference section of the objects of the current section, and its
+	 * trailer pointing to the previous section
+	 */
+	private void writeXref() throws IOException {
+		// Sort the objects by number, there are 6 at most
+		for (int i = 1; i < objectCount; ++i) {
+			int object = objects[i];
+			long offset = offsets[i];
+			int j = i;
+			for (; j > 0 && objects[j - 1] > object; --j) {
+				objects[j] = objects[j - 1];
+				offsets[j] = offsets[j - 1];
+			}
+			objects[j] = object;
+			offsets[j] = offset;
+		}
+
+		long xref = position();
+		ascii("xref\n");
+		if (previousXref < 0) {
+			ascii("0 1\n0000000000 65535 f \n");
+		}
+		for (int i = 0; i < objectCount;) {
+			int end = i + 1;
+			while (end < objectCount && objects[end] == objects[end - 1] + 1) {
+				++end;
+			}
+			integer(objects[i]);
+			put((byte) ' ');
+			integer(end - i);
+			ascii("\n");
+			for (; i < end; ++i) {
+				padded(offsets[i], 10);
+				ascii(" 00000 n \n");
+			}
+		}
+		ascii("trailer\n<< /Size ");
+		integer(objects[objectCount - 1] + 1);
+		objectCount = 0;
+		ascii(" /Root 1 0 R");
+		if (previousXref >= 0) {
+			ascii(" /Prev ");
+			integer(previousXref);
+		}
+		ascii(" >>\nstartxref\n");
+		integer(xref);
+		ascii("\n%%EOF\n");
+		previousXref = xref;
+	}
+
+	/**
+	 * Remember the offset of an object of the current section and write its header
+	 */
+	private void beginObject(int object) throws IOException {
+		objects[objectCount] = object;
+		offsets[objectCount++] = position();
+		integer(object);
+		ascii(" 0 obj\n");
+	}
+
+	/*
+	 * ================================================
+	 * Writing the bytes, without intermediate String
+	 * ================================================
+	 */
+
+	/**
+	 * Make room for count bytes in the buffer, writing it to the stream if needed
+	 */
+	private void reserve(int count) throws IOException {
+		if (length + count > BUFFER_SIZE) {
+			flush();
+		}
+	}
+
+	private void put(byte b) throws IOException {
+		reserve(1);
+		buffer[length++] = b;
+	}
+
+	private void ascii(String text) throws IOException {
+		reserve(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			buffer[length++] = (byte) text.charAt(i);
+		}
+	}
+
+	private void integer(long value) throws IOException {
+		reserve(20);
+		if (value >= 0 && value < 1000) {
+			// The coordinates in modules: no 64-bit division
+			int small = (int) value;
+			if (small >= 100) buffer[length++] = (byte) ('0' + small / 100);
+			if (small >= 10) buffer[length++] = (byte) ('0' + small / 10 % 10);
+			buffer[length++] = (byte) ('0' + small % 10);
+			return;
+		}
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (count > 0) {
+			buffer[length++] = digits[--count];
+		}
+	}
+
+	/**
+	 * Write a non negative integer on width digits, padded with zeros
+	 */
+	private void padded(long value, int width) throws IOException {
+		reserve(width);
+		for (int i = width - 1; i >= 0; --i) {
+			buffer[length + i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		length += width;
+	}
+
+	/**
+	 * Write a number with at most 4 decimals
+	 */
+	private void decimal(float value) throws IOException {
+		long scaled = Math.round(value * 10_000d);
+		if (scaled < 0) {
+			put((byte) '-');
+			scaled = -scaled;
+		}
+		integer(scaled / 10_000);
+		int fraction = (int) (scaled % 10_000);
+		if (fraction != 0) {
+			reserve(5);
+			buffer[length++] = '.';
+			int digit = 1000;
+			while (fraction != 0) {
+				buffer[length++] = (byte) ('0' + fraction / digit);
+				fraction %= digit;
+				digit /= 10;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the document written so far
+	 */
+	private long position() {
+		return written + length;
+	}
+
+	private void flush() throws IOException {
+		out.write(buffer, 0, length);
+		written += length;
+		length = 0;
+	}
+}
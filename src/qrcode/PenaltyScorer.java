@@ -0,0 +1,176 @@
+package qrcode;
+
+/**
+ * Penalty rules of the mask evaluation computed on the packed rows of a BitMatrix, 64
+ * modules at a time with shifts, ANDs and popcounts. The columns are read as the rows of
+ * the transposed matrix. The scores are exactly those of MatrixConstruction.evaluate on
+ * the int[][] matrix.
+ *
+ * A scorer holds the scratch transposed matrix, it is not thread safe.
+ */
+final class PenaltyScorer {
+
+	/*
+	 * Motifs of the third rule, bit k being the module k (1 for a black module):
+	 * W W W W B W B B B W B and its reverse B W B B B W B W W W W
+	 */
+	private static final int MOTIF_LENGTH = 11;
+	private static final int MOTIF1 = 0b10111010000;
+	private static final int MOTIF2 = 0b00001011101;
+
+	private final BitMatrix columns;
+	private final long[] block = new long[64];
+
+	PenaltyScorer(int size) {
+		columns = new BitMatrix(size);
+	}
+
+	/**
+	 * @return the penalty score of the matrix, the same as MatrixConstruction.evaluate
+	 */
+	int evaluate(BitMatrix matrix) {
+		BitMatrix transposed = transpose(matrix);
+		return rule4(matrix) + rule2(matrix) + rule1(matrix) + rule1(transposed) + rule3(matrix) + rule3(transposed);
+	}
+
+	/**
+	 * Compute the rules from the cheapest to the most expensive one, and stop as soon as
+	 * the partial score exceeds a limit: the penalties being positive, the complete score
+	 * would exceed it too.
+	 *
+	 * @param limit
+	 *            the highest score of interest
+	 * @return the score of the matrix if it is lower or equal to limit, a partial score
+	 *         higher than limit otherwise
+	 */
+	int evaluate(BitMatrix matrix, int limit) {
+		int penalite = rule4(matrix);
+		if (penalite > limit) return penalite;
+		penalite += rule2(matrix);
+		if (penalite > limit) return penalite;
+		penalite += rule1(matrix);
+		if (penalite > limit) return penalite;
+		penalite += rule3(matrix);
+		if (penalite > limit) return penalite;
+		BitMatrix transposed = transpose(matrix);
+		penalite += rule1(transposed);
+		if (penalite > limit) return penalite;
+		return penalite + rule3(transposed);
+	}
+
+	/**
+	 * @return the transposed matrix, held in the scratch matrix of the scorer
+	 */
+	BitMatrix transpose(BitMatrix matrix) {
+		matrix.transposeInto(columns, block);
+		return columns;
+	}
+
+	/**
+	 * First rule along the rows: each run of n >= 5 modules of the same color costs n - 2.
+	 * Such a run holds n - 4 windows of 5 identical modules, the first window counting 2
+	 * more points.
+	 *
+	 * @return the penalty of the rows of the matrix
+	 */
+	static int rule1(BitMatrix matrix) {
+		int size = matrix.size();
+		int n = matrix.rowWords;
+		long[] words = matrix.words;
+		int penalite = 0;
+
+		for (int base = 0; base < words.length; base += n) {
+			long previous = 0;
+			for (int w = 0; w < n; ++w) {
+				long r = words[base + w];
+				long same = ~(r ^ shiftRight(words, base, n, w, 1)) & ~(r ^ shiftRight(words, base, n, w, 2))
+						& ~(r ^ shiftRight(words, base, n, w, 3)) & ~(r ^ shiftRight(words, base, n, w, 4));
+				same &= validMask(w, size - 4);
+				long starts = same & ~((same << 1) | (previous >>> 63));
+				penalite += Long.bitCount(same) + 2 * Long.bitCount(starts);
+				previous = same;
+			}
+		}
+		return penalite;
+	}
+
+	/**
+	 * Second rule: each 2x2 square of modules of the same color costs 3.
+	 *
+	 * @return the penalty of the matrix
+	 */
+	static int rule2(BitMatrix matrix) {
+		int size = matrix.size();
+		int n = matrix.rowWords;
+		long[] words = matrix.words;
+		int blocks = 0;
+
+		for (int base = 0; base + n < words.length; base += n) {
+			for (int w = 0; w < n; ++w) {
+				long a = words[base + w];
+				long b = words[base + n + w];
+				long same = ~(a ^ b) & ~(a ^ shiftRight(words, base, n, w, 1))
+						& ~(b ^ shiftRight(words, base + n, n, w, 1));
+				blocks += Long.bitCount(same & validMask(w, size - 1));
+			}
+		}
+		return 3 * blocks;
+	}
+
+	/**
+	 * Third rule along the rows: each 1:1:3:1:1 motif preceded or followed by 4 white
+	 * modules costs 40, overlapping motifs counting each.
+	 *
+	 * @return the penalty of the rows of the matrix
+	 */
+	static int rule3(BitMatrix matrix) {
+		int size = matrix.size();
+		int n = matrix.rowWords;
+		long[] words = matrix.words;
+		int motifs = 0;
+
+		for (int base = 0; base < words.length; base += n) {
+			for (int w = 0; w < n; ++w) {
+				long valid = validMask(w, size - MOTIF_LENGTH + 1);
+				long motif1 = valid, motif2 = valid;
+				for (int k = 0; k < MOTIF_LENGTH && (motif1 | motif2) != 0; ++k) {
+					long shifted = k == 0 ? words[base + w] : shiftRight(words, base, n, w, k);
+					motif1 &= ((MOTIF1 >>> k) & 1) != 0 ? shifted : ~shifted;
+					motif2 &= ((MOTIF2 >>> k) & 1) != 0 ? shifted : ~shifted;
+				}
+				motifs += Long.bitCount(motif1) + Long.bitCount(motif2);
+			}
+		}
+		return 40 * motifs;
+	}
+
+	/**
+	 * Fourth rule: deviation of the proportion of dark modules from 50 %.
+	 *
+	 * @return the penalty of the matrix
+	 */
+	static int rule4(BitMatrix matrix) {
+		int size = matrix.size();
+		return MatrixConstruction.penalite4(matrix.countDark(), size * size);
+	}
+
+	/**
+	 * @return the word w of the row starting at base, shifted so that its bit x is the
+	 *         module x + k of the row (0 beyond the row)
+	 */
+	private static long shiftRight(long[] words, int base, int n, int w, int k) {
+		long value = words[base + w] >>> k;
+		if (w + 1 < n) value |= words[base + w + 1] << (64 - k);
+		return value;
+	}
+
+	/**
+	 * @return the bits of word w whose module index is lower than count
+	 */
+	private static long validMask(int w, int count) {
+		int bits = count - (w << 6);
+		if (bits >= 64) return -1L;
+		if (bits <= 0) return 0L;
+		return (1L << bits) - 1;
+	}
+}
@@ -0,0 +1,295 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Write QR codes as PNG files of 1 bit per pixel (grayscale, bit depth 1), streaming the
+ * scanlines straight from the matrix: no BufferedImage is built and ImageIO is not used.
+ *
+ * Only one scanline of the image is held in memory. The rows of pixels repeating the
+ * previous one (inside a module, or in the quiet zone) are written with the filter "Up",
+ * i.e. as zeros, which the compression almost removes.
+ *
+ * Larger images, such as sheets of QR codes, can be written row by row with start, writeRow
+ * and finish.
+ *
+ * A writer reuses its Deflater, CRC32 and buffers from one image to the next. It is not
+ * thread safe, and has to be closed to release the Deflater.
+ */
+public final class PngWriter implements AutoCloseable {
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final byte[] IHDR = { 'I', 'H', 'D', 'R' };
+	private static final byte[] IDAT = { 'I', 'D', 'A', 'T' };
+	private static final byte[] IEND = { 'I', 'E', 'N', 'D' };
+
+	/*
+	 * Filter types of a scanline
+	 */
+	private static final int FILTER_NONE = 0;
+	private static final int FILTER_UP = 2;
+
+	/**
+	 * Size of the IDAT chunks
+	 */
+	private static final int CHUNK_SIZE = 32 * 1024;
+
+	private final Deflater deflater;
+	private final CRC32 crc = new CRC32();
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	private final byte[] header = new byte[13];
+	private final byte[] word = new byte[4];
+	private byte[] line = new byte[0];
+	private byte[] zeros = new byte[0];
+	private int chunkLength;
+
+	/*
+	 * The image being written
+	 */
+	private OutputStream out;
+	private int width;
+	private int height;
+	private int rows;
+
+	/**
+	 * Create a writer with the default compression level
+	 */
+	public PngWriter() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param level
+	 *            the compression level, between 0 and 9 (see Deflater)
+	 */
+	public PngWriter(int level) {
+		deflater = new Deflater(level);
+	}
+
+	/**
+	 * Write a QR code as a PNG image
+	 *
+	 * @param matrix
+	 *            the QR code
+	 * @param scale
+	 *            the number of pixels of the side of a module
+	 * @param border
+	 *            the number of white pixels around the QR code (the quiet zone)
+	 * @param out
+	 *            the stream receiving the PNG file, left open
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void write(BitMatrix matrix, int scale, int border, OutputStream out) throws IOException {
+		if (scale < 1 || border < 0) {
+			throw new IllegalArgumentException("The scale has to be positive and the border not negative");
+		}
+		int size = matrix.size() * scale + 2 * border;
+		int stride = (size + 7) >>> 3;
+		start(size, size, out);
+
+		// Quiet zone above the QR code: a white line, then the same line again
+		Arrays.fill(line, 1, stride + 1, (byte) 0xFF);
+		line[0] = FILTER_NONE;
+		for (int row = 0; row < border; ++row) {
+			deflate(out, row == 0 ? line : zeros, stride + 1);
+		}
+
+		for (int y = 0; y < matrix.size(); ++y) {
+			Arrays.fill(line, 1, stride + 1, (byte) 0xFF);
+			int x = 0;
+			while (x < matrix.size()) {
+				boolean dark = matrix.get(x, y);
+				int end = x + 1;
+				while (end < matrix.size() && matrix.get(end, y) == dark) {
+					++end;
+				}
+				// The first byte of the line is the filter type
+				if (dark) RasterRenderer.clearBits(line, 8 + border + x * scale, 8 + border + end * scale);
+				x = end;
+			}
+			for (int row = 0; row < scale; ++row) {
+				deflate(out, row == 0 ? line : zeros, stride + 1);
+			}
+		}
+
+		// Quiet zone below the QR code
+		Arrays.fill(line, 1, stride + 1, (byte) 0xFF);
+		for (int row = 0; row < border; ++row) {
+			deflate(out, row == 0 ? line : zeros, stride + 1);
+		}
+
+		// The rows were compressed directly, without writeRow
+		rows = height;
+		finish();
+	}
+
+	/**
+	 * Begin an image written row by row with {@link #writeRow(byte[], int)}, then completed
+	 * by {@link #finish()}. A row repeating the previous one is written with the filter Up.
+	 *
+	 * @param width
+	 *            the width of the image, in pixels
+	 * @param height
+	 *            the height of the image, in pixels
+	 * @param out
+	 *            the stream receiving the PNG file, left open
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void start(int width, int height, OutputStream out) throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("The image has to be at least 1 pixel wide and high");
+		}
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		rows = 0;
+		int stride = (width + 7) >>> 3;
+		if (line.length < stride + 1) {
+			line = new byte[stride + 1];
+			zeros = new byte[stride + 1];
+		}
+		zeros[0] = FILTER_UP;
+
+		out.write(SIGNATURE);
+		writeInt(header, 0, width);
+		writeInt(header, 4, height);
+		header[8] = 1; // bit depth
+		header[9] = 0; // grayscale
+		header[10] = 0; // deflate
+		header[11] = 0; // adaptive filtering
+		header[12] = 0; // no interlace
+		writeChunk(out, IHDR, header, 13);
+
+		deflater.reset();
+		chunkLength = 0;
+	}
+
+	/**
+	 * Write the next row of the image begun by {@link #start(int, int, OutputStream)}
+	 *
+	 * @param pixels
+	 *            the array holding the row, 1 bit per pixel, the first pixel being the most
+	 *            significant bit of the first byte and the bit 1 being white
+	 * @param offset
+	 *            the index in pixels of the first byte of the row
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void writeRow(byte[] pixels, int offset) throws IOException {
+		if (rows == height) {
+			throw new IllegalStateException("All the rows of the image are already written");
+		}
+		int stride = (width + 7) >>> 3;
+		if (rows > 0 && Arrays.equals(line, 1, stride + 1, pixels, offset, offset + stride)) {
+			deflate(out, zeros, stride + 1);
+		} else {
+			line[0] = FILTER_NONE;
+			System.arraycopy(pixels, offset, line, 1, stride);
+			deflate(out, line, stride + 1);
+		}
+		++rows;
+	}
+
+	/**
+	 * Complete the image begun by {@link #start(int, int, OutputStream)}, once all its rows
+	 * are written
+	 *
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void finish() throws IOException {
+		if (rows != height) {
+			throw new IllegalStateException(rows + " rows written out of " + height);
+		}
+		deflater.finish();
+		while (!deflater.finished()) {
+			drain(out);
+		}
+		if (chunkLength > 0) {
+			writeChunk(out, IDAT, chunk, chunkLength);
+		}
+		writeChunk(out, IEND, chunk, 0);
+		out = null;
+	}
+
+	/**
+	 * Same as {@link #write(BitMatrix, int, int, OutputStream)} on a channel
+	 *
+	 * @throws IOException
+	 *             if the channel cannot be written
+	 */
+	public void write(BitMatrix matrix, int scale, int border, WritableByteChannel channel) throws IOException {
+		write(matrix, scale, border, new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Release the Deflater of the writer
+	 */
+	@Override
+	public void close() {
+		deflater.end();
+	}
+
+	/**
+	 * Compress a scanline, writing the IDAT chunks as they get full
+	 */
+	private void deflate(OutputStream out, byte[] scanline, int length) throws IOException {
+		deflater.setInput(scanline, 0, length);
+		while (!deflater.needsInput()) {
+			drain(out);
+		}
+	}
+
+	private void drain(OutputStream out) throws IOException {
+		chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+		if (chunkLength == CHUNK_SIZE) {
+			writeChunk(out, IDAT, chunk, chunkLength);
+			chunkLength = 0;
+		}
+	}
+
+	/**
+	 * Write a chunk: its length, its type, its data and the CRC of the type and data
+	 */
+	private void writeChunk(OutputStream out, byte[] type, byte[] data, int length) throws IOException {
+		writeInt(word, 0, length);
+		out.write(word);
+		out.write(type);
+		out.write(data, 0, length);
+
+		crc.reset();
+		crc.update(type);
+		crc.update(data, 0, length);
+		writeInt(word, 0, (int) crc.getValue());
+		out.write(word);
+	}
+
+	private static void writeInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+}
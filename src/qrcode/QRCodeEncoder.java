@@ -0,0 +1,97 @@
+package qrcode;
+
+/**
+ * Reusable QR code encoder. An encoder owns the scratch buffers of the whole pipeline: data
+ * bits, segments, codewords, error correction codewords, unmasked matrix and mask
+ * candidates. They grow to the largest input and version met, after which an encoding
+ * allocates nothing: the QR code is written into a matrix given by the caller.
+ *
+ * The result is the same as DataEncoding.encode followed by MatrixConstruction.renderQRCode.
+ *
+ * An encoder is not thread safe. Use one encoder per thread, e.g. the one given by
+ * {@link #forCurrentThread()}, or a pool of encoders.
+ */
+public final class QRCodeEncoder {
+
+	private static final ThreadLocal<QRCodeEncoder> ENCODERS = ThreadLocal.withInitial(QRCodeEncoder::new);
+
+	private final Segmenter.Workspace workspace = new Segmenter.Workspace();
+	private final BitBuffer bits = new BitBuffer();
+	private final BitBuffer codewords = new BitBuffer();
+	private int[] data = new int[0];
+	private int[] errors = new int[0];
+
+	/*
+	 * The evaluator of the last version encoded, holding the matrices of the masks
+	 */
+	private MaskEvaluator evaluator;
+
+	/**
+	 * @return the encoder of the current thread, created on first use
+	 */
+	public static QRCodeEncoder forCurrentThread() {
+		return ENCODERS.get();
+	}
+
+	/**
+	 * Encode the input (split into optimal segments) with its error correction, and write
+	 * the QR code with the mask of least penalty into the given matrix.
+	 *
+	 * @param input
+	 *            the text to encode, truncated if it does not fit in the version
+	 * @param version
+	 *            the version of the QR code
+	 * @param lvl
+	 *           the error correction level (L, M, Q, H)
+	 * @param output
+	 *            the matrix receiving the QR code, of the size of the version
+	 * @return the mask used
+	 */
+	public int encode(String input, int version, char lvl, BitMatrix output) {
+		if (output.size() != QRCodeInfos.getMatrixSize(version)) {
+			throw new IllegalArgumentException("The matrix has to be of the size of version " + version);
+		}
+		BitBuffer encoded = encodeData(input, version, lvl);
+
+		if (evaluator == null || evaluator.version() != version) {
+			evaluator = new MaskEvaluator(version);
+		}
+		evaluator.place(encoded, lvl);
+		int mask = evaluator.bestMask();
+		evaluator.candidate(mask, output);
+		return mask;
+	}
+
+	/**
+	 * Same as {@link #encode(String, int, char, BitMatrix)}, the QR code being written into
+	 * a new matrix
+	 *
+	 * @return the matrix of the QR code
+	 */
+	public BitMatrix encode(String input, int version, char lvl) {
+		BitMatrix output = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+		encode(input, version, lvl, output);
+		return output;
+	}
+
+	/**
+	 * Encode the input with its error correction, as DataEncoding.encode does.
+	 *
+	 * @return the bits of the interleaved data and error correction codewords, held by the
+	 *         encoder until its next use
+	 */
+	public BitBuffer encodeData(String input, int version, char lvl) {
+		BlockPlan plan = BlockPlan.of(version, lvl);
+		if (data.length < plan.dataLength) {
+			data = new int[plan.dataLength];
+		}
+		if (errors.length < plan.eccLength) {
+			errors = new int[plan.eccLength];
+		}
+
+		bits.clear();
+		DataEncoding.appendData(bits, input, version, lvl, workspace);
+		DataEncoding.finish(bits, plan, data, errors, codewords, null);
+		return codewords;
+	}
+}
@@ -1,10 +1,19 @@
 package qrcode;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 public final class QRCodeInfos {
 
 	private static final int MATRIX_SIZE_VERSION_1 =21;
 	private static final int MATRIX_SIZE_STEP =4;
 
+	/**
+	 * Number of light modules of the quiet zone on each side of a QR code, used by all the
+	 * renderers
+	 */
+	public static final int QUIET_ZONE = 4;
+
 	private final static int[][] VERSION_CODE_WORDS = { {19, 34, 55, 80, 108, 136, 156, 194, 232,
 			274, 324, 370, 428, 461, 523, 589, 647, 721, 795, 861, 932, 1006, 1094, 1174, 1276, 1370,
 			1468, 1531, 1631, 1735, 1843, 1955, 2071, 2191, 2306, 2434, 2566, 2702, 2812, 2956},
@@ -42,21 +51,282 @@ public final class QRCodeInfos {
 			{1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21,
 					25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81}  };
 	
+	/*
+	 * Capacity index: MAX_CHARACTERS[lvl][mode][version - 1] is the maximal number of
+	 * characters (bytes for the byte mode) of a single segment.
+	 */
+	private static final int[][][] MAX_CHARACTERS = maxCharactersGenerator();
+
+	/*
+	 * MAX_UTF8_BYTES[lvl][version - 1]: the maximal number of bytes of a byte segment in
+	 * UTF-8, i.e. after the ECI header
+	 */
+	private static final int[][] MAX_UTF8_BYTES = maxUtf8BytesGenerator();
+
+	private static int[][][] maxCharactersGenerator() {
+		int[][][] table = new int[4][Mode.values().length][40];
+		for (int lvl = 0; lvl < 4; ++lvl) {
+			for (Mode mode : Mode.values()) {
+				for (int version = 1; version <= 40; ++version) {
+					table[lvl][mode.ordinal()][version - 1] = mode.maxCharacters(VERSION_CODE_WORDS[lvl][version - 1] * 8,
+							version);
+				}
+			}
+		}
+		return table;
+	}
+
+	private static int[][] maxUtf8BytesGenerator() {
+		int[][] table = new int[4][40];
+		for (int lvl = 0; lvl < 4; ++lvl) {
+			for (int version = 1; version <= 40; ++version) {
+				table[lvl][version - 1] = Mode.BYTE.maxCharacters(VERSION_CODE_WORDS[lvl][version - 1] * 8 - ECI_BITS,
+						version);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * ECI header announcing UTF-8 data (ECI indicator 0111, designator 26), written before
+	 * the segments of an input encoded in UTF-8: readers assume ISO-8859-1 otherwise
+	 */
+	static final int ECI_UTF8 = 0b0111_00011010;
+	static final int ECI_BITS = 12;
+
 	public enum CorrectionLvl{
 		L,M,Q,H
 	}
 
 	/**
-	 * Calculates the best version (minimum version) for a given input and level of correction.
+	 * Encoding modes of the data, with their 4 bits mode indicator and the number of bits of
+	 * the character count for versions 1 to 9, 10 to 26 and 27 to 40.
+	 */
+	public enum Mode {
+		NUMERIC(0b0001, 10, 12, 14),
+		ALPHANUMERIC(0b0010, 9, 11, 13),
+		BYTE(0b0100, 8, 16, 16);
+
+		private final int indicator;
+		private final int[] countBits;
+
+		Mode(int indicator, int... countBits) {
+			this.indicator = indicator;
+			this.countBits = countBits;
+		}
+
+		/**
+		 * @return the 4 bits mode indicator
+		 */
+		public int indicator() {
+			return indicator;
+		}
+
+		/**
+		 * @return the number of bits of the character count for the given version
+		 */
+		public int characterCountBits(int version) {
+			if (version < 10) {
+				return countBits[0];
+			}
+			return version < 27 ? countBits[1] : countBits[2];
+		}
+
+		/**
+		 * @return the number of bits of count characters in this mode, header excluded
+		 */
+		public int dataBits(int count) {
+			switch (this) {
+				case NUMERIC :
+					return 10 * (count / 3) + ((count % 3 == 0) ? 0 : (count % 3 == 1) ? 4 : 7);
+				case ALPHANUMERIC :
+					return 11 * (count / 2) + 6 * (count % 2);
+				default :
+					return 8 * count;
+			}
+		}
+
+		/**
+		 * @return the number of bits of a segment of count characters in this mode,
+		 *           mode indicator and character count included
+		 */
+		public int segmentBits(int count, int version) {
+			return 4 + characterCountBits(version) + dataBits(count);
+		}
+
+		/**
+		 * @return the maximal number of characters of a segment of this mode fitting in the
+		 *           given number of bits
+		 */
+		public int maxCharacters(int bits, int version) {
+			int available = bits - 4 - characterCountBits(version);
+			if (available < 0) {
+				return 0;
+			}
+			int count;
+			switch (this) {
+				case NUMERIC :
+					count = 3 * (available / 10) + ((available % 10 >= 7) ? 2 : (available % 10 >= 4) ? 1 : 0);
+					break;
+				case ALPHANUMERIC :
+					count = 2 * (available / 11) + ((available % 11 >= 6) ? 1 : 0);
+					break;
+				default :
+					count = available / 8;
+					break;
+			}
+			return Math.min(count, (1 << characterCountBits(version)) - 1);
+		}
+	}
+
+	/**
+	 * Characters of the alphanumeric mode, in the order of their values
+	 */
+	public static final String ALPHANUMERIC_CHARSET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+	private static final int[] ALPHANUMERIC_VALUES = alphanumericValuesGenerator();
+
+	private static int[] alphanumericValuesGenerator() {
+		int[] values = new int[128];
+		Arrays.fill(values, -1);
+		for (int i = 0; i < ALPHANUMERIC_CHARSET.length(); ++i) {
+			values[ALPHANUMERIC_CHARSET.charAt(i)] = i;
+		}
+		return values;
+	}
+
+	/**
+	 * @return the value of the character in alphanumeric mode, or -1 if the character
+	 *           cannot be encoded in this mode
+	 */
+	public static int alphanumericValue(char c) {
+		return c < 128 ? ALPHANUMERIC_VALUES[c] : -1;
+	}
+
+	/**
+	 * @return the most compact mode able to encode the whole input
+	 */
+	public static Mode bestMode(String input) {
+		Mode mode = Mode.NUMERIC;
+		for (int i = 0; i < input.length(); ++i) {
+			char c = input.charAt(i);
+			if (c < '0' || c > '9') {
+				if (alphanumericValue(c) < 0) {
+					return Mode.BYTE;
+				}
+				mode = Mode.ALPHANUMERIC;
+			}
+		}
+		return mode;
+	}
+
+	/**
+	 * Calculates the best version (minimum version) for a given input and level of correction,
+	 * the input being split into optimal segments as by DataEncoding.encode.
 	 *
 	 * @return the best version
 	 */
 	public static int bestVersion(String input, char lvl) {
-		int bestVersion = 1;
-		while (bestVersion < 40 && input.length() > QRCodeInfos.getMaxInputLength(bestVersion, lvl)) {
-			++bestVersion;
+		return Segmenter.bestVersion(input, lvl);
+	}
+
+	/**
+	 * Calculates the best version (minimum version) for a given input, level of correction
+	 * and encoding mode.
+	 *
+	 * @return the best version
+	 */
+	public static int bestVersion(String input, char lvl, Mode mode) {
+		int count = input.length();
+		int[] maxCharacters = MAX_CHARACTERS[lvlIndex(lvl)][mode.ordinal()];
+		if (mode == Mode.BYTE) {
+			count = DataEncoding.byteLength(input, 0, input.length());
+			if (DataEncoding.byteModeCharset(input) != StandardCharsets.ISO_8859_1) {
+				maxCharacters = MAX_UTF8_BYTES[lvlIndex(lvl)];
+			}
+		}
+
+		int low = 0;
+		int high = maxCharacters.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (maxCharacters[middle] >= count) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low + 1;
+	}
+
+	/**
+	 * Find the minimum version between first and last (included) able to hold the given
+	 * number of data bits, by binary search in the capacities.
+	 *
+	 * @return the minimum version, or -1 if even the last version is too small
+	 */
+	static int smallestVersion(int bits, char lvl, int first, int last) {
+		int[] codeWords = VERSION_CODE_WORDS[lvlIndex(lvl)];
+		if (codeWords[last - 1] * 8 < bits) {
+			return -1;
+		}
+		int low = first - 1;
+		int high = last - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (codeWords[middle] * 8 >= bits) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low + 1;
+	}
+
+	/**
+	 * Size of a QR code, computed without encoding it
+	 */
+	public static final class Estimate {
+
+		/**
+		 * The version of the QR code
+		 */
+		public final int version;
+
+		/**
+		 * The number of modules on a side of the QR code, quiet zone excluded
+		 */
+		public final int modules;
+
+		/**
+		 * The number of pixels on a side of the rendered image, quiet zone included
+		 */
+		public final int pixels;
+
+		Estimate(int version, int modules, int pixels) {
+			this.version = version;
+			this.modules = modules;
+			this.pixels = pixels;
 		}
-		return bestVersion;
+	}
+
+	/**
+	 * Compute the size of the QR code of an input without encoding it. The version is the one
+	 * chosen by bestVersion.
+	 *
+	 * @param input
+	 *           the text to encode
+	 * @param lvl
+	 *           a character that defines the level of correction (L, M, Q, H)
+	 * @param scale
+	 *           the number of pixels of a module
+	 * @return the version, number of modules and number of pixels of the QR code, a quiet
+	 *           zone of QUIET_ZONE modules being added on each side
+	 */
+	public static Estimate estimate(String input, char lvl, int scale) {
+		int version = bestVersion(input, lvl);
+		int modules = getMatrixSize(version);
+		return new Estimate(version, modules, (modules + 2 * QUIET_ZONE) * scale);
 	}
 	
 	/**
@@ -73,20 +343,32 @@ public final class QRCodeInfos {
 		return MATRIX_SIZE_VERSION_1 + MATRIX_SIZE_STEP*(version-1);
 	}
 
+	/**
+	 * @return the maximal number of characters of the given mode that a QR code of the given
+	 *           version and level of correction can hold
+	 */
+	public static int getMaxInputLength(int version, char lvl, Mode mode) {
+		return MAX_CHARACTERS[lvlIndex(lvl)][mode.ordinal()][version-1];
+	}
+
+	/**
+	 * @return the maximal number of bytes that a QR code of the given version and level of
+	 *           correction can hold in byte mode
+	 */
 	public static int getMaxInputLength(int version, char lvl) {
 		if(version>40) {
 			throw new UnsupportedOperationException("The version has to be between 1 and 41");
 		}
-		switch (lvl) {
-			case 'M' :
-				return VERSION_CODE_WORDS[1][version-1] -2;
-			case 'Q' :
-				return VERSION_CODE_WORDS[2][version-1] -2;
-			case 'H' :
-				return VERSION_CODE_WORDS[3][version-1] -2;
-			default :
-				return VERSION_CODE_WORDS[0][version-1] -2;
-		}
+		return MAX_CHARACTERS[lvlIndex(lvl)][Mode.BYTE.ordinal()][version-1];
+	}
+
+	/**
+	 * @param latin1
+	 *           true for an input encoded in ISO-8859-1, false for UTF-8 (with its ECI header)
+	 * @return the maximal number of bytes of an input in byte mode
+	 */
+	static int getMaxInputLength(int version, char lvl, boolean latin1) {
+		return latin1 ? getMaxInputLength(version, lvl) : MAX_UTF8_BYTES[lvlIndex(lvl)][version-1];
 	}
 
 	public static int getECCLength(int version, char lvl) {
@@ -125,36 +407,31 @@ public final class QRCodeInfos {
 		if(mask>7 || mask <0) {
 			throw new IllegalArgumentException("The mask has to be between 0 and 7");
 		}
-		int errorCorrectionLevel;
-		switch (lvl) {
-			case 'M' :
-				if (mask == 0) {
-					return new boolean[]{true, false, true, false, true, false, false, false,
-							false, false, true, false, false, true, false};
-				}
-				errorCorrectionLevel=QRCodeInfos.CorrectionLvl.M.ordinal();
-				break;
-			case 'Q' :
-				errorCorrectionLevel=QRCodeInfos.CorrectionLvl.Q.ordinal();
-				break;
-			case 'H' :
-				errorCorrectionLevel=QRCodeInfos.CorrectionLvl.H.ordinal();
-				break;
-			default :
-				errorCorrectionLevel=QRCodeInfos.CorrectionLvl.L.ordinal();
-				break;
+		int format = QRCodeSpec.formatWord(lvlIndex(lvl), mask);
+
+		boolean[] formatPixels = new boolean[15];
+		for(int i=0;i<formatPixels.length;i++) {
+			formatPixels[i] = !(((format >> (14 - i)) & 0b1) == 0);
 		}
 
-		int code = ((LVL_CODE[errorCorrectionLevel]& 0x3)<<3) | (mask&0x7);
+		return formatPixels;
+	}
+
+	/**
+	 * Compute the 15 bits of format information (correction level and mask, with their BCH
+	 * code) the first bit being the most significant one. Used to build the QRCodeSpec tables.
+	 *
+	 * @param lvlIndex
+	 *           the index of the correction level (see lvlIndex)
+	 */
+	static int computeFormatWord(int lvlIndex, int mask) {
+		int code = ((LVL_CODE[lvlIndex]& 0x3)<<3) | (mask&0x7);
 		int current = code<<10;
 
 		int poly = 0b10100110111;
 		int size = 15;
-		while(((0b1<<(size-1)) & current) ==0) {
+		while(size > 0 && ((0b1<<(size-1)) & current) ==0) {
 			size--;
-			if(size == 0) {
-				throw new IllegalAccessError();
-			}
 		}
 
 		while(size>10) {
@@ -171,14 +448,24 @@ public final class QRCodeInfos {
 			}
 		}
 
-		int format = (code<<10 | (current& 0x3FF)) ^ 0b101010000010010;
+		return (code<<10 | (current& 0x3FF)) ^ 0b101010000010010;
+	}
 
-		boolean[] formatPixels = new boolean[15];
-		for(int i=0;i<formatPixels.length;i++) {
-			formatPixels[i] = !(((format >> (14 - i)) & 0b1) == 0);
+	/**
+	 * @return the index of the correction level in the tables (L = 0, M = 1, Q = 2, H = 3).
+	 *           Any other character is treated as L.
+	 */
+	static int lvlIndex(char lvl) {
+		switch (lvl) {
+			case 'M' :
+				return 1;
+			case 'Q' :
+				return 2;
+			case 'H' :
+				return 3;
+			default :
+				return 0;
 		}
-
-		return formatPixels;
 	}
 
 	/**
@@ -242,6 +529,23 @@ public final class QRCodeInfos {
 	 */
 	public static boolean[] format(int version) {
 
+		int current = (version >= 7 && version <= 40) ? QRCodeSpec.versionWord(version) : computeVersionWord(version);
+
+		boolean[] formatPixels = new boolean[18];
+		for(int i = 0; i < formatPixels.length; ++i) {
+			formatPixels[i] = (((current >> i) & 0b1) == 1);
+		}
+
+		return formatPixels;
+
+	}
+
+	/**
+	 * Compute the 18 bits of version information (version and BCH code), the bit i being
+	 * the i-th module written. Used to build the QRCodeSpec tables.
+	 */
+	static int computeVersionWord(int version) {
+
 		int code = version & 0b111111;
 		int current = code << 12;
 		int poly = 0b1111100100101;
@@ -256,15 +560,7 @@ public final class QRCodeInfos {
 			size = size(current);
 		}
 
-		current = (code << 12) | current;
-
-		boolean[] formatPixels = new boolean[18];
-		for(int i = 0; i < formatPixels.length; ++i) {
-			formatPixels[i] = (((current >> i) & 0b1) == 1);
-		}
-
-		return formatPixels;
-
+		return (code << 12) | current;
 	}
 
 	/**
@@ -0,0 +1,162 @@
+package qrcode;
+
+import java.util.Arrays;
+
+/**
+ * Immutable tables of the QR code specification, computed once when the class is loaded:
+ * the 32 format information words, the 34 version information words, the codeword counts
+ * of each (version, level) pair and the centers of the alignment patterns.
+ *
+ * The matrix construction reads them directly, without any switch or allocation.
+ */
+final class QRCodeSpec {
+
+	/*
+	 * FORMAT_WORDS[lvlIndex * 8 + mask]: the 15 bits of format information, the first
+	 * module being the most significant bit
+	 */
+	private static final int[] FORMAT_WORDS = formatWordsGenerator();
+
+	/*
+	 * VERSION_WORDS[version]: the 18 bits of version information for versions 7 to 40, the
+	 * first module being the least significant bit
+	 */
+	private static final int[] VERSION_WORDS = versionWordsGenerator();
+
+	/*
+	 * CODEWORDS[lvlIndex][version]: number of data codewords (bits 0 to 11), of error
+	 * correction codewords (bits 12 to 23) and of blocks (bits 24 to 30)
+	 */
+	private static final int[][] CODEWORDS = codewordsGenerator();
+
+	/*
+	 * ALIGNMENT_CENTERS[version]: centers of the alignment patterns, packed as
+	 * col << 8 | line. The patterns that would overlap a finder pattern are left out.
+	 */
+	private static final int[][] ALIGNMENT_CENTERS = alignmentCentersGenerator();
+
+	private QRCodeSpec() {}
+
+	private static int[] formatWordsGenerator() {
+		int[] words = new int[32];
+		for (int lvl = 0; lvl < 4; ++lvl) {
+			for (int mask = 0; mask < 8; ++mask) {
+				words[lvl * 8 + mask] = QRCodeInfos.computeFormatWord(lvl, mask);
+			}
+		}
+		return words;
+	}
+
+	private static int[] versionWordsGenerator() {
+		int[] words = new int[41];
+		for (int version = 7; version <= 40; ++version) {
+			words[version] = QRCodeInfos.computeVersionWord(version);
+		}
+		return words;
+	}
+
+	private static int[][] codewordsGenerator() {
+		char[] levels = { 'L', 'M', 'Q', 'H' };
+		int[][] table = new int[4][41];
+		for (int lvl = 0; lvl < 4; ++lvl) {
+			for (int version = 1; version <= 40; ++version) {
+				table[lvl][version] = QRCodeInfos.getCodeWordsLength(version, levels[lvl])
+						| QRCodeInfos.getECCLength(version, levels[lvl]) << 12
+						| QRCodeInfos.nbBlocks(version, levels[lvl]) << 24;
+			}
+		}
+		return table;
+	}
+
+	private static int[][] alignmentCentersGenerator() {
+		int[][] table = new int[41][];
+		table[1] = new int[0];
+		for (int version = 2; version <= 40; ++version) {
+			int size = QRCodeInfos.getMatrixSize(version);
+			if (version < 7) {
+				table[version] = new int[] { (size - 7) << 8 | (size - 7) };
+				continue;
+			}
+
+			int nb = QRCodeInfos.nbCoordonnees(version);
+			int[] coordonnees = new int[nb + 1];
+			coordonnees[0] = 6;
+			coordonnees[nb] = size - 7;
+			for (int i = 1; i < nb; ++i) {
+				coordonnees[i] = QRCodeInfos.COORDONNEES[i - 1][version - (i * 7)];
+			}
+
+			int count = 0;
+			int[] centers = new int[(nb + 1) * (nb + 1)];
+			for (int col : coordonnees) {
+				for (int line : coordonnees) {
+					if (!overlapsFinder(col, line, size)) {
+						centers[count++] = col << 8 | line;
+					}
+				}
+			}
+			table[version] = Arrays.copyOf(centers, count);
+		}
+		return table;
+	}
+
+	/**
+	 * @return true if an alignment pattern centered in (col, line) would overlap one of the
+	 *         finder patterns (with their white border of 8x8 modules)
+	 */
+	private static boolean overlapsFinder(int col, int line, int size) {
+		boolean left = col - 2 <= 7;
+		boolean top = line - 2 <= 7;
+		boolean right = col + 2 >= size - 8;
+		boolean bottom = line + 2 >= size - 8;
+		return (left && top) || (right && top) || (left && bottom);
+	}
+
+	/**
+	 * @return the 15 bits of format information, the first module being the most significant bit
+	 */
+	static int formatWord(int lvlIndex, int mask) {
+		return FORMAT_WORDS[lvlIndex * 8 + mask];
+	}
+
+	/**
+	 * @return the 18 bits of version information of a version between 7 and 40, the first
+	 *         module being the least significant bit
+	 */
+	static int versionWord(int version) {
+		return VERSION_WORDS[version];
+	}
+
+	static int dataCodewords(int version, int lvlIndex) {
+		return CODEWORDS[lvlIndex][version] & 0xFFF;
+	}
+
+	static int eccCodewords(int version, int lvlIndex) {
+		return (CODEWORDS[lvlIndex][version] >>> 12) & 0xFFF;
+	}
+
+	static int nbBlocks(int version, int lvlIndex) {
+		return CODEWORDS[lvlIndex][version] >>> 24;
+	}
+
+	/**
+	 * @return the number of alignment patterns of the version
+	 */
+	static int nbAlignmentPatterns(int version) {
+		return ALIGNMENT_CENTERS[version].length;
+	}
+
+	/**
+	 * @return the column of the center of the i-th alignment pattern
+	 */
+	static int alignmentCol(int version, int i) {
+		return ALIGNMENT_CENTERS[version][i] >>> 8;
+	}
+
+	/**
+	 * @return the line of the center of the i-th alignment pattern
+	 */
+	static int alignmentLine(int version, int i) {
+		return ALIGNMENT_CENTERS[version][i] & 0xFF;
+	}
+}
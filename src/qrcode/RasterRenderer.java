@@ -0,0 +1,171 @@
+package qrcode;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Draw QR codes into images by writing straight into the arrays backing them, instead of
+ * calling setRGB for every pixel. A line of modules is drawn once as runs of pixels of the
+ * same color (Arrays.fill), then copied with System.arraycopy to the other pixel rows of
+ * the same modules.
+ *
+ * Two outputs are available: TYPE_INT_ARGB, the one of the rest of the program, and
+ * TYPE_BYTE_BINARY with 1 bit per pixel, 32 times smaller.
+ */
+public final class RasterRenderer {
+
+	private static final int W = 0xFF_FF_FF_FF;
+	private static final int B = 0xFF_00_00_00;
+
+	private RasterRenderer() {}
+
+	/**
+	 * Draw a QR code in an ARGB image
+	 *
+	 * @param matrix
+	 *            the QR code
+	 * @param scale
+	 *            the number of pixels of the side of a module
+	 * @param border
+	 *            the number of white pixels around the QR code (the quiet zone)
+	 * @return an image of matrix.size() * scale + 2 * border pixels of side
+	 */
+	public static BufferedImage render(BitMatrix matrix, int scale, int border) {
+		int size = checkedSize(matrix.size(), scale, border);
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		Arrays.fill(pixels, 0, border * size, W);
+		int[] line = new int[size];
+		Arrays.fill(line, W);
+		for (int y = 0; y < matrix.size(); ++y) {
+			int x = 0;
+			while (x < matrix.size()) {
+				boolean dark = matrix.get(x, y);
+				int end = x + 1;
+				while (end < matrix.size() && matrix.get(end, y) == dark) {
+					++end;
+				}
+				Arrays.fill(line, border + x * scale, border + end * scale, dark ? B : W);
+				x = end;
+			}
+			replicate(line, pixels, border + y * scale, scale, size);
+		}
+		Arrays.fill(pixels, (size - border) * size, size * size, W);
+		return image;
+	}
+
+	/**
+	 * Same as {@link #render(BitMatrix, int, int)} with an image of 1 bit per pixel
+	 * (TYPE_BYTE_BINARY, the bit 1 being white)
+	 */
+	public static BufferedImage renderBinary(BitMatrix matrix, int scale, int border) {
+		int size = checkedSize(matrix.size(), scale, border);
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_BINARY);
+		byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		int stride = (size + 7) >>> 3;
+
+		Arrays.fill(pixels, (byte) 0xFF);
+		byte[] line = new byte[stride];
+		for (int y = 0; y < matrix.size(); ++y) {
+			Arrays.fill(line, (byte) 0xFF);
+			int x = 0;
+			while (x < matrix.size()) {
+				boolean dark = matrix.get(x, y);
+				int end = x + 1;
+				while (end < matrix.size() && matrix.get(end, y) == dark) {
+					++end;
+				}
+				if (dark) clearBits(line, border + x * scale, border + end * scale);
+				x = end;
+			}
+			replicate(line, pixels, border + y * scale, scale, stride);
+		}
+		return image;
+	}
+
+	/**
+	 * Draw a 2-dimensional array of ARGB colors indexed [x][y] in an image of the same size,
+	 * one pixel per cell
+	 */
+	public static BufferedImage toImage(int[][] matrix) {
+		int width = matrix.length;
+		int height = matrix[0].length;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int x = 0; x < width; ++x) {
+			int[] column = matrix[x];
+			for (int y = 0; y < height; ++y) {
+				pixels[y * width + x] = column[y];
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Scale a square image, each pixel becoming a square of scale pixels of side, and add a
+	 * white border around it
+	 *
+	 * @return an ARGB image of image.getWidth() * scale + 2 * border pixels of side
+	 */
+	public static BufferedImage scale(BufferedImage image, int scale, int border) {
+		if (image.getHeight() != image.getWidth()) {
+			throw new IllegalArgumentException("The image must be squared");
+		}
+		int previousSize = image.getWidth();
+		int size = checkedSize(previousSize, scale, border);
+		int[] source = image.getRGB(0, 0, previousSize, previousSize, null, 0, previousSize);
+		BufferedImage scaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) scaled.getRaster().getDataBuffer()).getData();
+
+		Arrays.fill(pixels, 0, border * size, W);
+		int[] line = new int[size];
+		Arrays.fill(line, W);
+		for (int y = 0; y < previousSize; ++y) {
+			for (int x = 0; x < previousSize; ++x) {
+				int start = border + x * scale;
+				Arrays.fill(line, start, start + scale, source[y * previousSize + x]);
+			}
+			replicate(line, pixels, border + y * scale, scale, size);
+		}
+		Arrays.fill(pixels, (size - border) * size, size * size, W);
+		return scaled;
+	}
+
+	private static int checkedSize(int modules, int scale, int border) {
+		if (scale < 1 || border < 0) {
+			throw new IllegalArgumentException("The scale has to be positive and the border not negative");
+		}
+		return modules * scale + 2 * border;
+	}
+
+	/**
+	 * Copy a line of pixels to count consecutive rows, starting at row first
+	 */
+	private static void replicate(Object line, Object pixels, int first, int count, int stride) {
+		for (int row = first; row < first + count; ++row) {
+			System.arraycopy(line, 0, pixels, row * stride, stride);
+		}
+	}
+
+	/**
+	 * Clear the bits from (included) to to (excluded) of a line of 1-bit pixels, the first
+	 * pixel being the most significant bit of the first byte
+	 */
+	static void clearBits(byte[] line, int from, int to) {
+		while (from < to && (from & 7) != 0) {
+			line[from >>> 3] &= ~(0x80 >>> (from & 7));
+			++from;
+		}
+		while (to - from >= 8) {
+			line[from >>> 3] = 0;
+			from += 8;
+		}
+		while (from < to) {
+			line[from >>> 3] &= ~(0x80 >>> (from & 7));
+			++from;
+		}
+	}
+}
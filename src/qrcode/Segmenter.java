@@ -0,0 +1,297 @@
+package qrcode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import qrcode.QRCodeInfos.Mode;
+
+/**
+ * Split an input into numeric, alphanumeric and byte segments so that the number of bits
+ * needed to encode it is minimal.
+ *
+ * The split is found by dynamic programming over the characters, in linear time. The
+ * states are the mode of the current segment and, for the numeric and alphanumeric modes,
+ * the number of characters of the current segment modulo 3 or 2. The cost of the states
+ * is then an exact number of bits, and the size of the headers (which depends on the
+ * version) is counted each time a segment starts.
+ */
+public final class Segmenter {
+
+	/**
+	 * A part of the input encoded in a single mode
+	 */
+	public static final class Segment {
+
+		/**
+		 * The encoding mode of the segment
+		 */
+		public final Mode mode;
+
+		/**
+		 * Index of the first character of the segment in the input
+		 */
+		public final int start;
+
+		/**
+		 * Index following the last character of the segment in the input
+		 */
+		public final int end;
+
+		Segment(Mode mode, int start, int end) {
+			this.mode = mode;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Scratch arrays of the segmentation, grown when needed and reused from one input to
+	 * the next (see QRCodeEncoder). The segments found are held as triples (mode ordinal,
+	 * start, end).
+	 */
+	static final class Workspace {
+		private int[] costs = new int[NB_STATES];
+		private int[] next = new int[NB_STATES];
+		private final int[] headers = new int[NB_STATES];
+		private byte[] from = new byte[0];
+		int[] segments = new int[0];
+		int count;
+
+		private void ensureCapacity(int length) {
+			if (from.length < length * NB_STATES) {
+				from = new byte[length * NB_STATES];
+				segments = new int[3 * length];
+			}
+		}
+
+		Mode mode(int segment) {
+			return MODES[segments[3 * segment]];
+		}
+
+		int start(int segment) {
+			return segments[3 * segment + 1];
+		}
+
+		int end(int segment) {
+			return segments[3 * segment + 2];
+		}
+	}
+
+	/*
+	 * States of the dynamic programming
+	 */
+	private static final int NUMERIC_0 = 0;
+	private static final int NUMERIC_1 = 1;
+	private static final int NUMERIC_2 = 2;
+	private static final int ALPHANUMERIC_0 = 3;
+	private static final int ALPHANUMERIC_1 = 4;
+	private static final int BYTE = 5;
+	private static final int NB_STATES = 6;
+
+	/*
+	 * Marks in the back pointers: the state before the first character, and the start of
+	 * a new segment
+	 */
+	private static final int START = 7;
+	private static final int NEW_SEGMENT = 8;
+
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	private static final Mode[] STATE_MODE = { Mode.NUMERIC, Mode.NUMERIC, Mode.NUMERIC, Mode.ALPHANUMERIC,
+			Mode.ALPHANUMERIC, Mode.BYTE };
+
+	private static final Mode[] MODES = Mode.values();
+
+	/*
+	 * Versions whose character count sizes represent the versions 1 to 9, 10 to 26 and 27 to 40
+	 */
+	private static final int[] VERSION_RANGES = { 1, 10, 27, 41 };
+
+	private Segmenter() {}
+
+	/**
+	 * @param input
+	 *           the text to encode
+	 * @param version
+	 *           qrcode version, defining the size of the headers
+	 * @return the segments encoding the input with the minimal number of bits, in order
+	 */
+	public static Segment[] segment(String input, int version) {
+		Workspace workspace = new Workspace();
+		segment(input, version, workspace);
+
+		Segment[] segments = new Segment[workspace.count];
+		for (int k = 0; k < segments.length; ++k) {
+			segments[k] = new Segment(workspace.mode(k), workspace.start(k), workspace.end(k));
+		}
+		return segments;
+	}
+
+	/**
+	 * Same as {@link #segment(String, int)}, the segments being written into the
+	 * workspace. Nothing is allocated once the workspace has grown to the input length.
+	 */
+	static void segment(String input, int version, Workspace workspace) {
+		int length = input.length();
+		boolean latin1 = DataEncoding.byteModeCharset(input) == StandardCharsets.ISO_8859_1;
+		workspace.count = 0;
+		if (length == 0) {
+			return;
+		}
+		workspace.ensureCapacity(length);
+		if (QRCodeInfos.bestMode(input) == Mode.NUMERIC) {
+			workspace.segments[0] = Mode.NUMERIC.ordinal();
+			workspace.segments[1] = 0;
+			workspace.segments[2] = length;
+			workspace.count = 1;
+			return;
+		}
+
+		int[] headers = workspace.headers;
+		for (int s = 0; s < NB_STATES; ++s) {
+			headers[s] = 4 + STATE_MODE[s].characterCountBits(version);
+		}
+
+		int[] costs = workspace.costs;
+		int[] next = workspace.next;
+		byte[] from = workspace.from;
+		int best = 0;
+		int bestState = START;
+
+		for (int i = 0; i < length; ++i) {
+			char c = input.charAt(i);
+			boolean digit = c >= '0' && c <= '9';
+			boolean alphanumeric = QRCodeInfos.alphanumericValue(c) >= 0;
+			Arrays.fill(next, INFINITY);
+
+			if (digit) {
+				relax(next, from, i, NUMERIC_1, best + headers[NUMERIC_0] + 4, bestState | NEW_SEGMENT);
+				if (i > 0) {
+					relax(next, from, i, NUMERIC_1, costs[NUMERIC_0] + 4, NUMERIC_0);
+					relax(next, from, i, NUMERIC_2, costs[NUMERIC_1] + 3, NUMERIC_1);
+					relax(next, from, i, NUMERIC_0, costs[NUMERIC_2] + 3, NUMERIC_2);
+				}
+			}
+			if (alphanumeric) {
+				relax(next, from, i, ALPHANUMERIC_1, best + headers[ALPHANUMERIC_0] + 6, bestState | NEW_SEGMENT);
+				if (i > 0) {
+					relax(next, from, i, ALPHANUMERIC_1, costs[ALPHANUMERIC_0] + 6, ALPHANUMERIC_0);
+					relax(next, from, i, ALPHANUMERIC_0, costs[ALPHANUMERIC_1] + 5, ALPHANUMERIC_1);
+				}
+			}
+			int byteBits = 8 * DataEncoding.byteLength(input, i, 0, length, latin1);
+			relax(next, from, i, BYTE, best + headers[BYTE] + byteBits, bestState | NEW_SEGMENT);
+			if (i > 0) {
+				relax(next, from, i, BYTE, costs[BYTE] + byteBits, BYTE);
+			}
+
+			int[] swap = costs;
+			costs = next;
+			next = swap;
+
+			best = INFINITY;
+			for (int s = 0; s < NB_STATES; ++s) {
+				if (costs[s] < best) {
+					best = costs[s];
+					bestState = s;
+				}
+			}
+		}
+
+		backtrack(from, length, bestState, workspace);
+	}
+
+	/**
+	 * Keep the cheapest way to reach a state after the character i
+	 */
+	private static void relax(int[] next, byte[] from, int i, int state, int cost, int previous) {
+		if (cost < next[state]) {
+			next[state] = cost;
+			from[i * NB_STATES + state] = (byte) previous;
+		}
+	}
+
+	/**
+	 * Rebuild the segments from the back pointers, starting at the last character
+	 */
+	private static void backtrack(byte[] from, int length, int lastState, Workspace workspace) {
+		int nbSegments = 0;
+		int state = lastState;
+		for (int i = length - 1; i >= 0; --i) {
+			int previous = from[i * NB_STATES + state];
+			if ((previous & NEW_SEGMENT) != 0) {
+				++nbSegments;
+			}
+			state = previous & START;
+		}
+
+		int[] segments = workspace.segments;
+		workspace.count = nbSegments;
+		state = lastState;
+		int end = length;
+		for (int i = length - 1; i >= 0; --i) {
+			int previous = from[i * NB_STATES + state];
+			if ((previous & NEW_SEGMENT) != 0) {
+				--nbSegments;
+				segments[3 * nbSegments] = STATE_MODE[state].ordinal();
+				segments[3 * nbSegments + 1] = i;
+				segments[3 * nbSegments + 2] = end;
+				end = i;
+			}
+			state = previous & START;
+		}
+	}
+
+	/**
+	 * @return the number of bits of the segments, headers included, as well as the ECI
+	 *           header of an input encoded in UTF-8
+	 */
+	public static int bits(String input, Segment[] segments, int version) {
+		int bits = eciBits(input);
+		for (Segment segment : segments) {
+			int count = segment.mode == Mode.BYTE ? DataEncoding.byteLength(input, segment.start, segment.end)
+					: segment.end - segment.start;
+			bits += segment.mode.segmentBits(count, version);
+		}
+		return bits;
+	}
+
+	/**
+	 * Same as {@link #bits(String, Segment[], int)} for the segments of a workspace
+	 */
+	static int bits(String input, Workspace workspace, int version) {
+		int bits = eciBits(input);
+		for (int k = 0; k < workspace.count; ++k) {
+			Mode mode = workspace.mode(k);
+			int count = mode == Mode.BYTE ? DataEncoding.byteLength(input, workspace.start(k), workspace.end(k))
+					: workspace.end(k) - workspace.start(k);
+			bits += mode.segmentBits(count, version);
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the number of bits of the ECI header written before the segments of the input
+	 */
+	private static int eciBits(String input) {
+		return DataEncoding.byteModeCharset(input) == StandardCharsets.ISO_8859_1 ? 0 : QRCodeInfos.ECI_BITS;
+	}
+
+	/**
+	 * Calculates the best version (minimum version) for a given input and level of correction,
+	 * the input being split into optimal segments.
+	 *
+	 * @return the best version
+	 */
+	public static int bestVersion(String input, char lvl) {
+		for (int range = 0; range < VERSION_RANGES.length - 1; ++range) {
+			int first = VERSION_RANGES[range];
+			int bits = bits(input, segment(input, first), first);
+			int version = QRCodeInfos.smallestVersion(bits, lvl, first, VERSION_RANGES[range + 1] - 1);
+			if (version > 0) {
+				return version;
+			}
+		}
+		return 40;
+	}
+}
@@ -0,0 +1,167 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+
+/**
+ * Render a sheet of QR codes (a grid of labels of the same version) as one large 1-bit PNG
+ * image, without ever holding the whole image in memory.
+ *
+ * The image is split into horizontal strips, one per line of labels. Each strip is encoded
+ * and rasterised by a task of the executor, with the QRCodeEncoder of its thread, into a
+ * buffer of 1 bit per pixel. The strips are written to the PngWriter in order as they are
+ * completed. At most parallelism strips exist at once, so that the memory used is bounded by
+ * parallelism x the size of a strip, whatever the number of labels.
+ *
+ * A renderer only holds its settings, it can be shared between threads.
+ */
+public final class SheetRenderer {
+
+	private static final int QUIET_ZONE = QRCodeInfos.QUIET_ZONE;
+
+	private final int version;
+	private final char lvl;
+	private final int scale;
+	private final int columns;
+
+	/**
+	 * @param version
+	 *            the version of the QR codes
+	 * @param lvl
+	 *            the error correction level of the QR codes (L, M, Q, H)
+	 * @param scale
+	 *            the number of pixels of the side of a module
+	 * @param columns
+	 *            the number of labels on a line of the sheet
+	 */
+	public SheetRenderer(int version, char lvl, int scale, int columns) {
+		if (scale < 1 || columns < 1) {
+			throw new IllegalArgumentException("The scale and the number of columns have to be positive");
+		}
+		this.version = version;
+		this.lvl = lvl;
+		this.scale = scale;
+		this.columns = columns;
+	}
+
+	/**
+	 * @return the side of a label, quiet zone included, in pixels
+	 */
+	public int labelSize() {
+		return (QRCodeInfos.getMatrixSize(version) + 2 * QUIET_ZONE) * scale;
+	}
+
+	/**
+	 * Render count labels as a PNG image of columns labels of width, the last line being
+	 * completed with blank labels
+	 *
+	 * @param inputs
+	 *            the text of the label of each index, called from the threads of the executor
+	 * @param count
+	 *            the number of labels
+	 * @param writer
+	 *            the PNG writer, used by the calling thread only
+	 * @param out
+	 *            the stream receiving the image, left open
+	 * @param executor
+	 *            the executor rendering the strips, e.g. ForkJoinPool.commonPool()
+	 * @param parallelism
+	 *            the highest number of strips rendered or waiting to be written at once
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public void render(IntFunction<String> inputs, int count, PngWriter writer, OutputStream out, Executor executor,
+			int parallelism) throws IOException {
+		if (count < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("The number of labels and the parallelism have to be positive");
+		}
+		int label = labelSize();
+		int width = columns * label;
+		int stride = (width + 7) >>> 3;
+		int strips = (count + columns - 1) / columns;
+
+		Strip[] pool = new Strip[Math.min(parallelism, strips)];
+		List<CompletableFuture<Strip>> pending = new ArrayList<>(pool.length);
+		for (int s = 0; s < pool.length; ++s) {
+			pool[s] = new Strip(label * stride);
+			pending.add(submit(pool[s], s, inputs, count, stride, executor));
+		}
+
+		writer.start(width, strips * label, out);
+		for (int s = 0; s < strips; ++s) {
+			int slot = s % pool.length;
+			Strip strip = pending.get(slot).join();
+			for (int row = 0; row < label; ++row) {
+				writer.writeRow(strip.pixels, row * stride);
+			}
+			// The strip just written is reused for the next strip of the same slot
+			if (s + pool.length < strips) {
+				pending.set(slot, submit(strip, s + pool.length, inputs, count, stride, executor));
+			}
+		}
+		writer.finish();
+	}
+
+	private CompletableFuture<Strip> submit(Strip strip, int index, IntFunction<String> inputs, int count, int stride,
+			Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			draw(strip, index, inputs, count, stride);
+			return strip;
+		}, executor);
+	}
+
+	/**
+	 * Encode and draw the labels of a line of the sheet into a strip
+	 */
+	private void draw(Strip strip, int index, IntFunction<String> inputs, int count, int stride) {
+		byte[] pixels = strip.pixels;
+		BitMatrix matrix = strip.matrix;
+		int size = matrix.size();
+		int label = labelSize();
+		int margin = QUIET_ZONE * scale;
+		QRCodeEncoder encoder = QRCodeEncoder.forCurrentThread();
+
+		Arrays.fill(pixels, (byte) 0xFF);
+		int first = index * columns;
+		int last = Math.min(count, first + columns);
+		for (int i = first; i < last; ++i) {
+			encoder.encode(inputs.apply(i), version, lvl, matrix);
+			int left = (i - first) * label + margin;
+			for (int y = 0; y < size; ++y) {
+				// First row of pixels of the module, in bits from the start of the strip
+				long row = (long) (margin + y * scale) * stride * 8 + left;
+				int x = matrix.nextModule(0, y, true);
+				while (x < size) {
+					int end = matrix.nextModule(x, y, false);
+					RasterRenderer.clearBits(pixels, (int) (row + x * scale), (int) (row + end * scale));
+					x = matrix.nextModule(end, y, true);
+				}
+			}
+		}
+
+		for (int y = 0; y < size; ++y) {
+			int row = margin + y * scale;
+			for (int copy = 1; copy < scale; ++copy) {
+				System.arraycopy(pixels, row * stride, pixels, (row + copy) * stride, stride);
+			}
+		}
+	}
+
+	/**
+	 * The pixels of a line of labels, and the matrix of the label being drawn
+	 */
+	private final class Strip {
+		final byte[] pixels;
+		final BitMatrix matrix = new BitMatrix(QRCodeInfos.getMatrixSize(version));
+
+		Strip(int length) {
+			pixels = new byte[length];
+		}
+	}
+}
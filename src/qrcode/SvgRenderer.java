@@ -0,0 +1,92 @@
+package qrcode;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Write QR codes as SVG images. Each horizontal run of dark modules becomes one rectangle
+ * of the single path of the image ("M x y h n v 1 H x z"), so the size of the output is
+ * proportional to the number of runs and not to the number of modules. The coordinates are
+ * in modules, the quiet zone of QRCodeInfos.QUIET_ZONE modules included.
+ *
+ * The path is built in a StringBuilder reused from one image to the next, and handed to the
+ * output every few kilobytes. A renderer is not thread safe.
+ */
+public final class SvgRenderer {
+
+	private static final int QUIET_ZONE = QRCodeInfos.QUIET_ZONE;
+
+	/**
+	 * Number of characters buffered before being written to the output (a line of modules
+	 * takes less than 2 kB)
+	 */
+	private static final int FLUSH_SIZE = 8 * 1024;
+
+	private final StringBuilder buffer = new StringBuilder(2 * FLUSH_SIZE);
+	private final char[] chars = new char[2 * FLUSH_SIZE];
+
+	/**
+	 * Write a QR code as an SVG document
+	 *
+	 * @param matrix
+	 *            the QR code
+	 * @param moduleSize
+	 *            the number of pixels of the side of a module, for the width and the height
+	 *            of the image
+	 * @param out
+	 *            the output of the document, e.g. a Writer or a StringBuilder, left open
+	 * @throws IOException
+	 *             if the output cannot be written
+	 */
+	public void write(BitMatrix matrix, int moduleSize, Appendable out) throws IOException {
+		if (moduleSize < 1) {
+			throw new IllegalArgumentException("The module size has to be positive");
+		}
+		int size = matrix.size() + 2 * QUIET_ZONE;
+		buffer.setLength(0);
+		buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"").append(size * moduleSize)
+				.append("\" height=\"").append(size * moduleSize)
+				.append("\" viewBox=\"0 0 ").append(size).append(' ').append(size)
+				.append("\" shape-rendering=\"crispEdges\">\n")
+				.append("<rect width=\"100%\" height=\"100%\" fill=\"#FFFFFF\"/>\n")
+				.append("<path fill=\"#000000\" d=\"");
+
+		for (int y = 0; y < matrix.size(); ++y) {
+			int x = 0;
+			while (x < matrix.size()) {
+				if (!matrix.get(x, y)) {
+					++x;
+					continue;
+				}
+				int end = x + 1;
+				while (end < matrix.size() && matrix.get(end, y)) {
+					++end;
+				}
+				buffer.append('M').append(QUIET_ZONE + x).append(' ').append(QUIET_ZONE + y)
+						.append('h').append(end - x).append("v1H").append(QUIET_ZONE + x).append('z');
+				x = end;
+			}
+			if (buffer.length() >= FLUSH_SIZE) {
+				flush(out);
+			}
+		}
+
+		buffer.append("\"/>\n</svg>\n");
+		flush(out);
+	}
+
+	/**
+	 * Hand the buffered characters to the output and empty the buffer. A Writer receives
+	 * them through a char array, so that no String is created.
+	 */
+	private void flush(Appendable out) throws IOException {
+		if (out instanceof Writer && buffer.length() <= chars.length) {
+			buffer.getChars(0, buffer.length(), chars, 0);
+			((Writer) out).write(chars, 0, buffer.length());
+		} else {
+			out.append(buffer);
+		}
+		buffer.setLength(0);
+	}
+}
@@ -86,18 +86,12 @@ class TextFieldInterface implements ActionListener {
         if (version != 0 & version > best_version) {
             best_version = version;
         }
-        boolean[] encodedData = DataEncoding.byteModeEncoding(input, best_version, lvl);
-        int[][] qrCode = MatrixConstruction.renderQRCodeMatrix(best_version, encodedData, lvl);
+        BitBuffer encodedData = DataEncoding.encode(input, best_version, lvl);
+        BitMatrix qrCode = MatrixConstruction.renderQRCode(best_version, encodedData, lvl);
 
         // Transforme la matrice en image pouvant etre afficher dans la fenetre
-        BufferedImage image = new BufferedImage(qrCode.length, qrCode[0].length, BufferedImage.TYPE_INT_ARGB);
-        for (int x = 0; x < qrCode.length; x++) {
-            for (int y = 0; y < qrCode[0].length; y++) {
-                image.setRGB(x, y, qrCode[x][y]);
-            }
-        }
-        int scale = 400 / qrCode.length;
-        BufferedImage imageFinale = Helpers.reshape(image, scale, 0);
+        int scale = 400 / qrCode.size();
+        BufferedImage imageFinale = RasterRenderer.render(qrCode, scale, 0);
 
         // Affiche le QR Code dans la fenetre
         imageIcon = new ImageIcon(imageFinale);
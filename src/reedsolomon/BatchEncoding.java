@@ -0,0 +1,154 @@
+package reedsolomon;
+
+/**
+ * Generate the error correction codewords of many blocks of the same length with the same
+ * generator polynomial at once, e.g. the blocks of thousands of QR codes of the same version
+ * and correction level.
+ *
+ * The blocks are laid out column-wise: byte i of block b is at index i * blockCount + b, so
+ * that consecutive blocks can be processed in the lanes of a vector. When the incubating
+ * Vector API is available (java --add-modules jdk.incubator.vector), 16 to 64 blocks are
+ * encoded by each pass. Otherwise every block goes through the scalar
+ * {@link ErrorCorrectionEncoding} engine, with the same result.
+ */
+public final class BatchEncoding {
+
+	/**
+	 * Encoder working on column-wise blocks
+	 */
+	interface ColumnEncoder {
+
+		/**
+		 * Same contract as {@link BatchEncoding#encodeColumns(int[], int, int, GeneratorPolynomial, int[])}
+		 * for byte columns.
+		 */
+		void encodeColumns(byte[] columns, int blockCount, int length, GeneratorPolynomial generator,
+				byte[] eccColumns);
+	}
+
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_ENCODER = "reedsolomon.VectorBatchEncoder";
+
+	private static final ColumnEncoder VECTOR = loadVectorEncoder();
+
+	/*
+	 * Number of blocks transposed together by encode, a multiple of every vector length
+	 */
+	private static final int GROUP = 64;
+
+	private BatchEncoding() {}
+
+	/**
+	 * @return the vector encoder if the Vector API is available and fast enough on this
+	 *         machine, null otherwise
+	 */
+	private static ColumnEncoder loadVectorEncoder() {
+		if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			return null;
+		}
+		try {
+			return (ColumnEncoder) Class.forName(VECTOR_ENCODER).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the batches are encoded with the Vector API, false if the scalar
+	 *         fallback is used
+	 */
+	public static boolean isVectorized() {
+		return VECTOR != null;
+	}
+
+	/**
+	 * Generate the ECC of blocks stored one after the other.
+	 *
+	 * @param messages
+	 *            the blocks, block b occupying the indexes b * length to (b + 1) * length - 1
+	 * @param blockCount
+	 *            the number of blocks
+	 * @param length
+	 *            the number of bytes of each block
+	 * @param generator
+	 *            the generator polynomial, its degree is the number of ECC per block
+	 * @param ecc
+	 *            the array receiving the ECC, those of block b starting at index b * degree
+	 */
+	public static void encode(int[] messages, int blockCount, int length, GeneratorPolynomial generator,
+			int[] ecc) {
+		int n = generator.degree();
+		if (VECTOR == null) {
+			for (int b = 0; b < blockCount; ++b) {
+				ErrorCorrectionEncoding.encode(messages, b * length, length, generator, ecc, b * n);
+			}
+			return;
+		}
+
+		/*
+		 * Transpose the blocks by groups that stay in cache rather than all at once
+		 */
+		byte[] columns = new byte[length * GROUP];
+		byte[] eccColumns = new byte[n * GROUP];
+		for (int first = 0; first < blockCount; first += GROUP) {
+			int group = Math.min(GROUP, blockCount - first);
+			for (int b = 0; b < group; ++b) {
+				int start = (first + b) * length;
+				for (int i = 0; i < length; ++i) {
+					columns[i * group + b] = (byte) messages[start + i];
+				}
+			}
+			VECTOR.encodeColumns(columns, group, length, generator, eccColumns);
+			for (int b = 0; b < group; ++b) {
+				int start = (first + b) * n;
+				for (int j = 0; j < n; ++j) {
+					ecc[start + j] = eccColumns[j * group + b] & 0xFF;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generate the ECC of blocks laid out column-wise.
+	 *
+	 * @param columns
+	 *            the blocks, byte i of block b being at index i * blockCount + b
+	 * @param blockCount
+	 *            the number of blocks
+	 * @param length
+	 *            the number of bytes of each block
+	 * @param generator
+	 *            the generator polynomial, its degree is the number of ECC per block
+	 * @param eccColumns
+	 *            the array receiving the ECC, ECC j of block b being at index
+	 *            j * blockCount + b
+	 */
+	public static void encodeColumns(byte[] columns, int blockCount, int length, GeneratorPolynomial generator,
+			byte[] eccColumns) {
+		if (VECTOR != null) {
+			VECTOR.encodeColumns(columns, blockCount, length, generator, eccColumns);
+		} else {
+			encodeColumns(columns, blockCount, 0, blockCount, length, generator, eccColumns);
+		}
+	}
+
+	/**
+	 * Scalar encoding of the column-wise blocks from firstBlock (included) to lastBlock
+	 * (excluded). Also used by the vector encoder for the blocks that do not fill a vector.
+	 */
+	static void encodeColumns(byte[] columns, int blockCount, int firstBlock, int lastBlock, int length,
+			GeneratorPolynomial generator, byte[] eccColumns) {
+		int n = generator.degree();
+		int[] message = new int[length];
+		int[] ecc = new int[n];
+		for (int b = firstBlock; b < lastBlock; ++b) {
+			for (int i = 0; i < length; ++i) {
+				message[i] = columns[i * blockCount + b];
+			}
+			ErrorCorrectionEncoding.encode(message, 0, length, generator, ecc, 0);
+			for (int j = 0; j < n; ++j) {
+				eccColumns[j * blockCount + b] = (byte) ecc[j];
+			}
+		}
+	}
+}
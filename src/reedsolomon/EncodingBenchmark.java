@@ -0,0 +1,63 @@
+package reedsolomon;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import reedsolomon.ErrorCorrectionEncoding.Strategy;
+
+/**
+ * Small benchmark comparing the strategies of {@link ErrorCorrectionEncoding} for every
+ * number of error correction codewords per block (1 to 30). Each block holds
+ * {@value #BLOCK_LENGTH} message bytes, about the size of a QR code block.
+ *
+ * Run it with: java reedsolomon.EncodingBenchmark
+ */
+public final class EncodingBenchmark {
+
+	private static final int BLOCK_LENGTH = 120;
+	private static final int BLOCKS = 256;
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) {
+		Random random = new Random(0);
+		int[] messages = new int[BLOCK_LENGTH * BLOCKS];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = random.nextInt(256);
+		}
+
+		System.out.println("ECC   log tables (ns/block)   product tables (ns/block)   speedup");
+		for (int n = 1; n <= GeneratorPolynomial.MAX_CACHED_DEGREE; n++) {
+			GeneratorPolynomial generator = GeneratorPolynomial.of(n);
+			int[] reference = new int[n * BLOCKS];
+			int[] result = new int[n * BLOCKS];
+
+			double logTables = Double.MAX_VALUE;
+			double productTables = Double.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				logTables = Math.min(logTables, run(messages, generator, reference, Strategy.LOG_TABLES));
+				productTables = Math.min(productTables, run(messages, generator, result, Strategy.PRODUCT_TABLES));
+			}
+
+			if (!Arrays.equals(reference, result)) {
+				throw new IllegalStateException("The strategies disagree for " + n + " ECC");
+			}
+			System.out.printf("%3d   %22.1f   %26.1f   %6.2fx%n", n, logTables, productTables,
+					logTables / productTables);
+		}
+	}
+
+	/**
+	 * @return the mean time in nanoseconds to encode one block
+	 */
+	private static double run(int[] messages, GeneratorPolynomial generator, int[] ecc, Strategy strategy) {
+		int n = generator.degree();
+		int repetitions = 40;
+		long start = System.nanoTime();
+		for (int r = 0; r < repetitions; r++) {
+			for (int b = 0; b < BLOCKS; b++) {
+				ErrorCorrectionEncoding.encode(messages, b * BLOCK_LENGTH, BLOCK_LENGTH, generator, ecc, b * n, strategy);
+			}
+		}
+		return (System.nanoTime() - start) / (double) (repetitions * BLOCKS);
+	}
+}
@@ -0,0 +1,225 @@
+package reedsolomon;
+
+import static reedsolomon.GaloisField.EXP_TABLE;
+import static reedsolomon.GaloisField.LOG_TABLE;
+
+/**
+ * Check and correct codewords made of a message followed by the error correction
+ * codewords generated by {@link ErrorCorrectionEncoding}.
+ *
+ * {@link #check(int[], int, int, int)} is the fast path, meant to verify every generated
+ * QR code: it only tells whether the syndromes are all zero and allocates nothing.
+ * {@link #decode(int[], int, int, int)} corrects up to eccCount / 2 wrong bytes with the
+ * Berlekamp-Massey algorithm, a Chien search and the Forney formula.
+ */
+public final class ErrorCorrectionDecoding {
+
+	private ErrorCorrectionDecoding() {}
+
+	/**
+	 * Test whether a codeword is valid, i.e. all its syndromes are zero.
+	 *
+	 * @param codeword
+	 *            the array containing the message bytes followed by the ECC bytes
+	 * @param offset
+	 *            the index of the first message byte
+	 * @param length
+	 *            the number of bytes, ECC included
+	 * @param eccCount
+	 *            the number of ECC bytes
+	 * @return true if no error is detected, false otherwise
+	 */
+	public static boolean check(int[] codeword, int offset, int length, int eccCount) {
+		GeneratorPolynomial generator = GeneratorPolynomial.of(eccCount);
+		if (generator.products != null) {
+			return ErrorCorrectionEncoding.isMultiple(codeword, offset, length, generator);
+		}
+		for (int i = 0; i < eccCount; ++i) {
+			if (syndrome(codeword, offset, length, i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Correct a codeword in place.
+	 *
+	 * @param codeword
+	 *            the array containing the message bytes followed by the ECC bytes
+	 * @param offset
+	 *            the index of the first message byte
+	 * @param length
+	 *            the number of bytes, ECC included
+	 * @param eccCount
+	 *            the number of ECC bytes
+	 * @return the number of corrected bytes, or -1 if there are too many errors to correct
+	 *         them (the codeword is then left unchanged)
+	 */
+	public static int decode(int[] codeword, int offset, int length, int eccCount) {
+		if (check(codeword, offset, length, eccCount)) {
+			return 0;
+		}
+
+		int[] syndromes = new int[eccCount];
+		for (int i = 0; i < eccCount; ++i) {
+			syndromes[i] = syndrome(codeword, offset, length, i);
+		}
+
+		int[] locator = errorLocator(syndromes);
+		int nbErrors = degree(locator);
+		if (nbErrors == 0 || 2 * nbErrors > eccCount) {
+			return -1;
+		}
+
+		int[] positions = errorPositions(locator, nbErrors, length);
+		if (positions == null) {
+			return -1;
+		}
+
+		/*
+		 * Omega(x) = S(x) * Lambda(x) mod x^eccCount
+		 */
+		int[] evaluator = new int[eccCount];
+		for (int i = 0; i < eccCount; ++i) {
+			for (int j = 0; j <= Math.min(i, nbErrors); ++j) {
+				evaluator[i] ^= GaloisField.multiply(syndromes[i - j], locator[j]);
+			}
+		}
+
+		/*
+		 * Forney: e = X * Omega(1/X) / Lambda'(1/X), the first root of the generator being a^0
+		 */
+		int[] magnitudes = new int[nbErrors];
+		for (int k = 0; k < nbErrors; ++k) {
+			int power = length - 1 - positions[k];
+			int inverse = GaloisField.exp(-power);
+			int derivative = 0;
+			for (int i = 1; i <= nbErrors; i += 2) {
+				derivative ^= GaloisField.multiply(locator[i], GaloisField.exp(-power * (i - 1)));
+			}
+			if (derivative == 0) {
+				return -1;
+			}
+			int value = evaluate(evaluator, inverse);
+			magnitudes[k] = GaloisField.multiply(GaloisField.exp(power), GaloisField.divide(value, derivative));
+		}
+
+		for (int k = 0; k < nbErrors; ++k) {
+			codeword[offset + positions[k]] ^= magnitudes[k];
+		}
+		if (!check(codeword, offset, length, eccCount)) {
+			for (int k = 0; k < nbErrors; ++k) {
+				codeword[offset + positions[k]] ^= magnitudes[k];
+			}
+			return -1;
+		}
+		return nbErrors;
+	}
+
+	/**
+	 * @return the syndrome S_i, i.e. the codeword polynomial evaluated at a^i
+	 */
+	private static int syndrome(int[] codeword, int offset, int length, int i) {
+		int s = 0;
+		for (int j = offset; j < offset + length; ++j) {
+			if (s != 0) {
+				s = EXP_TABLE[(LOG_TABLE[s] + i) % 255];
+			}
+			s ^= codeword[j] & 0xFF;
+		}
+		return s;
+	}
+
+	/**
+	 * Berlekamp-Massey algorithm.
+	 *
+	 * @return the coefficients of the error locator Lambda(x), Lambda[0] = 1 being the
+	 *         constant term
+	 */
+	private static int[] errorLocator(int[] syndromes) {
+		int n = syndromes.length;
+		int[] current = new int[n + 1];
+		int[] previous = new int[n + 1];
+		int[] temp = new int[n + 1];
+		current[0] = 1;
+		previous[0] = 1;
+		int size = 0;
+		int shift = 1;
+		int lastDiscrepancy = 1;
+
+		for (int r = 0; r < n; ++r) {
+			int discrepancy = syndromes[r];
+			for (int i = 1; i <= size; ++i) {
+				discrepancy ^= GaloisField.multiply(current[i], syndromes[r - i]);
+			}
+
+			if (discrepancy == 0) {
+				++shift;
+				continue;
+			}
+
+			int coefficient = GaloisField.divide(discrepancy, lastDiscrepancy);
+			if (2 * size <= r) {
+				System.arraycopy(current, 0, temp, 0, n + 1);
+				for (int i = 0; i + shift <= n; ++i) {
+					current[i + shift] ^= GaloisField.multiply(coefficient, previous[i]);
+				}
+				size = r + 1 - size;
+				int[] swap = previous;
+				previous = temp;
+				temp = swap;
+				lastDiscrepancy = discrepancy;
+				shift = 1;
+			} else {
+				for (int i = 0; i + shift <= n; ++i) {
+					current[i + shift] ^= GaloisField.multiply(coefficient, previous[i]);
+				}
+				++shift;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Chien search: find the positions j such that Lambda(a^-(length - 1 - j)) = 0.
+	 *
+	 * @return the positions of the errors in the codeword, or null if the number of roots
+	 *         does not match the degree of the locator
+	 */
+	private static int[] errorPositions(int[] locator, int nbErrors, int length) {
+		int[] positions = new int[nbErrors];
+		int found = 0;
+		for (int j = 0; j < length; ++j) {
+			if (evaluate(locator, GaloisField.exp(-(length - 1 - j))) == 0) {
+				if (found == nbErrors) {
+					return null;
+				}
+				positions[found++] = j;
+			}
+		}
+		return found == nbErrors ? positions : null;
+	}
+
+	/**
+	 * @return the polynomial (constant term first) evaluated at x
+	 */
+	private static int evaluate(int[] poly, int x) {
+		int result = 0;
+		for (int i = poly.length - 1; i >= 0; --i) {
+			result = GaloisField.multiply(result, x) ^ poly[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the degree of the polynomial (constant term first)
+	 */
+	private static int degree(int[] poly) {
+		int degree = poly.length - 1;
+		while (degree > 0 && poly[degree] == 0) {
+			--degree;
+		}
+		return degree;
+	}
+}
@@ -1,53 +1,29 @@
 package reedsolomon;
 
+import static reedsolomon.GaloisField.EXP_TABLE;
+import static reedsolomon.GaloisField.LOG_TABLE;
+
 public final class ErrorCorrectionEncoding {
-	
-	
-	
-	
-	
-	
-	
-	private static final int[] ANTILOG_TABLE = antilogTableGenerator();
-	private static final int[] LOG_TABLE = logTableGenerator();
-	
-	private static final int[] antilogTableGenerator() {
-		int[] table = new int[256];
-		int n = 1;
-		for(int i=0;i<256;i++) {
-
-			if(table[n]==0) {
-				table[n]= i;
-			}
-			
-			n*=2;
-			if(n>255) {
-				n= n^285;
-			}
-		}
-		
-		table[0] = -1;
-		return table;
-	}
-	
-	
-	
-	
-	private static int[] logTableGenerator() {
-		int[] table = new int[256];
-		int n = 1;
-		for(int i=0;i<256;i++) {
-			table[i] = n;
-			n*=2;
-			if(n>255) {
-				n= n^285;
-			}
-		}
-		
-		
-		return table;
+
+	/**
+	 * The ways the remainder of the polynomial division can be updated. Both give
+	 * exactly the same error correction codewords.
+	 *
+	 * LOG_TABLES is the reference encoder: every term of factor * generator goes through a
+	 * logarithm addition and an exponent lookup.
+	 *
+	 * PRODUCT_TABLES reads the whole row factor * generator from a table precomputed
+	 * for each generator polynomial, so that each message byte costs a single row XOR.
+	 * Generators of degree higher than 32 have no table and use LOG_TABLES.
+	 */
+	public enum Strategy {
+		LOG_TABLES, PRODUCT_TABLES
 	}
 
+	/**
+	 * Strategy used when none is given
+	 */
+	public static final Strategy DEFAULT_STRATEGY = Strategy.PRODUCT_TABLES;
 
 	/**
 	 * Generate a given number of error correction codewords (ECC) for the given sequence of bytes
@@ -56,131 +32,123 @@ public final class ErrorCorrectionEncoding {
 	 * @return An array of ECC bytes for messageCodeWords
 	 */
 	public static int[] encode(int[] messageCodeWords,int errorCorrectionCodewords) {
-		
-		/*
-		 * Generate the message polynomial
-		 */
-		GalloisNumber[] messagePoly = new GalloisNumber[messageCodeWords.length];
-		int i= messageCodeWords.length-1;
-		for(int word:messageCodeWords) {
-			messagePoly[i--] =GalloisNumber.getGalloisNumber( word & 0xFF); 
+		int[] errorCodewords = new int[errorCorrectionCodewords];
+		encode(messageCodeWords, 0, messageCodeWords.length, GeneratorPolynomial.of(errorCorrectionCodewords),
+				errorCodewords, 0);
+		return errorCodewords;
+	}
+
+	/**
+	 * Generate the error correction codewords of a message directly into a buffer given by the
+	 * caller. The buffer is used as the remainder register of the polynomial division, so
+	 * nothing is allocated.
+	 *
+	 * @param message
+	 *            the array containing the message bytes
+	 * @param offset
+	 *            the index of the first message byte
+	 * @param length
+	 *            the number of message bytes
+	 * @param generator
+	 *            the generator polynomial, its degree is the number of ECC to generate
+	 * @param ecc
+	 *            the array receiving the ECC bytes
+	 * @param eccOffset
+	 *            the index where the first ECC byte is written
+	 */
+	public static void encode(int[] message, int offset, int length, GeneratorPolynomial generator, int[] ecc,
+			int eccOffset) {
+		encode(message, offset, length, generator, ecc, eccOffset, DEFAULT_STRATEGY);
+	}
+
+	/**
+	 * Same as {@link #encode(int[], int, int, GeneratorPolynomial, int[], int)} with a chosen
+	 * strategy to update the remainder.
+	 *
+	 * @param strategy
+	 *            the way the remainder is updated, see {@link Strategy}
+	 */
+	public static void encode(int[] message, int offset, int length, GeneratorPolynomial generator, int[] ecc,
+			int eccOffset, Strategy strategy) {
+		if (strategy == Strategy.PRODUCT_TABLES && generator.products != null) {
+			encodeWithProductTables(message, offset, length, generator, ecc, eccOffset);
+		} else {
+			encodeWithLogTables(message, offset, length, generator, ecc, eccOffset);
 		}
-		
-		/*
-		 * Create the generator polynomial
-		 */
-		GalloisNumber[] generatorPoly = polynomialGenerator(errorCorrectionCodewords);
-		
-		GalloisNumber[] remainder = messagePoly;
-		
-		for(int step=0;step<messageCodeWords.length;step++ ) {
-			int remainderSize = errorCorrectionCodewords<remainder.length? remainder.length-1:errorCorrectionCodewords;
-			GalloisNumber[] nextRemainder = new  GalloisNumber[remainderSize];
-			
-			
-			/*
-			 * multiply the generator polynomial
-			 */
-			GalloisNumber[] divisor = new GalloisNumber[generatorPoly.length];
-			GalloisNumber mul = remainder[remainder.length-1];
-			i = 0;
-			for(GalloisNumber coeff:generatorPoly) {
-				divisor[i++] = coeff.mul(mul);
+	}
+
+	private static void encodeWithLogTables(int[] message, int offset, int length, GeneratorPolynomial generator,
+			int[] ecc, int eccOffset) {
+		int[] logs = generator.logs;
+		int n = logs.length;
+		int last = eccOffset + n - 1;
+
+		for (int i = eccOffset; i <= last; ++i) {
+			ecc[i] = 0;
+		}
+
+		for (int i = offset; i < offset + length; ++i) {
+			int factor = (message[i] & 0xFF) ^ ecc[eccOffset];
+
+			if (factor == 0) {
+				System.arraycopy(ecc, eccOffset + 1, ecc, eccOffset, n - 1);
+				ecc[last] = 0;
+				continue;
 			}
-			
+
 			/*
-			 * XOR result with remainder
+			 * Shift the remainder by one term and subtract (XOR) factor * generator
 			 */
-			for(int j=1;j<=remainderSize;j++) {
-				GalloisNumber temp = null;
-				if(divisor.length-j-1 >=0 && remainder.length-j-1>=0) {
-					temp = divisor[divisor.length-j-1].add(remainder[remainder.length-j-1]);
-				}else if(remainder.length-j-1>=0){
-					temp = remainder[remainder.length-j-1];
-				}else {
-					temp = divisor[divisor.length-j-1];
-				}
-				
-				nextRemainder[remainderSize-j] = temp;
+			int logFactor = LOG_TABLE[factor];
+			for (int j = 0; j < n - 1; ++j) {
+				ecc[eccOffset + j] = ecc[eccOffset + j + 1] ^ EXP_TABLE[logs[j] + logFactor];
 			}
-			
-			remainder=nextRemainder;
-			
+			ecc[last] = EXP_TABLE[logs[n - 1] + logFactor];
 		}
-		
-		
+	}
+
+	private static void encodeWithProductTables(int[] message, int offset, int length,
+			GeneratorPolynomial generator, int[] ecc, int eccOffset) {
+		long[] products = generator.products;
+		int n = generator.degree();
+
 		/*
-		 * Generate error correction codewords
+		 * The remainder is held as 32 bytes packed in 4 longs, the first byte being the most
+		 * significant byte of r0. Row 0 of the table is filled with zeros, so no special case
+		 * is needed for a null factor.
 		 */
-		int[] errorCodewords = new int[errorCorrectionCodewords];
-		i= errorCorrectionCodewords-1;
-		for(GalloisNumber coeff:remainder) {
-			errorCodewords[i--] =  0xFF & coeff.represent();
+		long r0 = 0, r1 = 0, r2 = 0, r3 = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			int row = (((message[i] & 0xFF) ^ (int) (r0 >>> 56)) << 2);
+			r0 = ((r0 << 8) | (r1 >>> 56)) ^ products[row];
+			r1 = ((r1 << 8) | (r2 >>> 56)) ^ products[row + 1];
+			r2 = ((r2 << 8) | (r3 >>> 56)) ^ products[row + 2];
+			r3 = (r3 << 8) ^ products[row + 3];
 		}
-		return errorCodewords;
-	}
-	
-	
-	private final static class GalloisNumber{
-		final int p;
-		
-		public GalloisNumber(int power) {
-			p=power;
-		}
-		
-		public static GalloisNumber getGalloisNumber(int number) {
-			if(number>255) {
-				number=number^285;
-			}
-			return new GalloisNumber(ANTILOG_TABLE[number]);
-		}
-		
-		public GalloisNumber add(GalloisNumber n2) {
-			int res = this.represent() ^ n2.represent();
-			return getGalloisNumber(res);
-		}
-		
-		public GalloisNumber mul(GalloisNumber n2) {
-			if(p<0 || n2.p<0) {
-				return new GalloisNumber(-1);
-			}
-			return new GalloisNumber((n2.p +p)%255 );
-		}
-		
-		public int represent() {
-			if(p<0) {
-				return 0;
-			}
-			return LOG_TABLE[p];
-		}
-		
-		public String toString() {
-			if(p<0) {
-				return "0";
-			}
-			return "a^"+p;
+
+		for (int j = 0; j < n; ++j) {
+			long word = j < 8 ? r0 : j < 16 ? r1 : j < 24 ? r2 : r3;
+			ecc[eccOffset + j] = (int) (word >>> (56 - 8 * (j % 8))) & 0xFF;
 		}
-		
 	}
 
-	private final static GalloisNumber[] polynomialGenerator(int n) {
-		if(n == 1) {
-			GalloisNumber[] poly = {new GalloisNumber(0),new GalloisNumber(0)};
-			return poly;
-		}
-		GalloisNumber[] left = polynomialGenerator(n-1);
-		GalloisNumber[] right = {new GalloisNumber(n-1),new GalloisNumber(0)};
-		
-		GalloisNumber[] poly = new GalloisNumber[n+1];
-		poly[0] = right[0].mul(left[0]);
-		poly[n] = right[1];
-		
-		for(int i=1;i<n;i++) {
-			poly[i] = right[0].mul(left[i]).add(right[1].mul(left[i-1]));
+	/**
+	 * Test whether a whole codeword (message followed by its ECC) is a multiple of the
+	 * generator polynomial, which is equivalent to all its syndromes being zero. Nothing is
+	 * allocated.
+	 *
+	 * @return true if the remainder of the division is zero, false otherwise
+	 */
+	static boolean isMultiple(int[] codeword, int offset, int length, GeneratorPolynomial generator) {
+		long[] products = generator.products;
+		long r0 = 0, r1 = 0, r2 = 0, r3 = 0;
+		for (int i = offset; i < offset + length; ++i) {
+			int row = (((codeword[i] & 0xFF) ^ (int) (r0 >>> 56)) << 2);
+			r0 = ((r0 << 8) | (r1 >>> 56)) ^ products[row];
+			r1 = ((r1 << 8) | (r2 >>> 56)) ^ products[row + 1];
+			r2 = ((r2 << 8) | (r3 >>> 56)) ^ products[row + 2];
+			r3 = (r3 << 8) ^ products[row + 3];
 		}
-		
-		return poly;
-		
-		
+		return (r0 | r1 | r2 | r3) == 0;
 	}
 }
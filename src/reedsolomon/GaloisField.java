@@ -0,0 +1,116 @@
+package reedsolomon;
+
+/**
+ * Arithmetic in the Galois field GF(256) used by QR codes, with the primitive
+ * polynomial x^8 + x^4 + x^3 + x^2 + 1 (285). Elements are plain ints between 0
+ * and 255, additions are XORs and multiplications go through the exponent and
+ * logarithm tables, so no object is ever allocated.
+ */
+final class GaloisField {
+
+	static final int PRIMITIVE_POLYNOMIAL = 285;
+
+	/*
+	 * EXP_TABLE[i] = a^i. The table is doubled so that the sum of two logarithms
+	 * can be used as an index without reducing it modulo 255.
+	 */
+	static final int[] EXP_TABLE = expTableGenerator();
+
+	/*
+	 * LOG_TABLE[x] = i such that a^i = x. LOG_TABLE[0] is undefined and set to -1.
+	 */
+	static final int[] LOG_TABLE = logTableGenerator();
+
+	private GaloisField() {}
+
+	private static int[] expTableGenerator() {
+		int[] table = new int[512];
+		int n = 1;
+		for (int i = 0; i < 255; i++) {
+			table[i] = n;
+			table[i + 255] = n;
+			n <<= 1;
+			if (n > 255) {
+				n ^= PRIMITIVE_POLYNOMIAL;
+			}
+		}
+		table[510] = table[0];
+		table[511] = table[1];
+		return table;
+	}
+
+	private static int[] logTableGenerator() {
+		int[] table = new int[256];
+		table[0] = -1;
+		for (int i = 0; i < 255; i++) {
+			table[EXP_TABLE[i]] = i;
+		}
+		return table;
+	}
+
+	/**
+	 * @return the product of a and b in GF(256)
+	 */
+	static int multiply(int a, int b) {
+		if (a == 0 || b == 0) {
+			return 0;
+		}
+		return EXP_TABLE[LOG_TABLE[a] + LOG_TABLE[b]];
+	}
+
+	/**
+	 * @return a divided by b in GF(256), b being different from 0
+	 */
+	static int divide(int a, int b) {
+		if (b == 0) {
+			throw new ArithmeticException("Division by zero in GF(256)");
+		}
+		if (a == 0) {
+			return 0;
+		}
+		return EXP_TABLE[LOG_TABLE[a] + 255 - LOG_TABLE[b]];
+	}
+
+	/**
+	 * @return a^power, power being any integer (negative powers included)
+	 */
+	static int exp(int power) {
+		int p = power % 255;
+		return EXP_TABLE[p < 0 ? p + 255 : p];
+	}
+
+	/**
+	 * Compute the coefficients of the generator polynomial (x - a^0)(x - a^1)...(x - a^(n-1))
+	 * in logarithmic form.
+	 *
+	 * @param n
+	 *            the number of error correction codewords (degree of the polynomial)
+	 * @return an array of length n holding the logarithms of the coefficients of
+	 *         x^(n-1), ..., x^0. The leading coefficient (always 1) is omitted.
+	 */
+	static int[] generatorPolynomial(int n) {
+		if (n < 1 || n > 254) {
+			throw new IllegalArgumentException("The number of error correction codewords has to be between 1 and 254");
+		}
+		/*
+		 * poly[i] is the coefficient of x^(n-i), poly[0] being the leading 1
+		 */
+		int[] poly = new int[n + 1];
+		poly[0] = 1;
+		for (int degree = 0; degree < n; degree++) {
+			int root = EXP_TABLE[degree];
+			for (int i = degree + 1; i > 0; i--) {
+				poly[i] ^= multiply(poly[i - 1], root);
+			}
+		}
+
+		int[] logs = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (poly[i + 1] == 0) {
+				throw new IllegalStateException("Generator polynomial with a null coefficient");
+			}
+			logs[i] = LOG_TABLE[poly[i + 1]];
+		}
+		return logs;
+	}
+}
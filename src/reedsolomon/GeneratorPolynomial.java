@@ -0,0 +1,104 @@
+package reedsolomon;
+
+/**
+ * Immutable Reed-Solomon generator polynomial (x - a^0)(x - a^1)...(x - a^(n-1)).
+ *
+ * The polynomials of degree 1 to {@value #MAX_CACHED_DEGREE} cover every number of
+ * error correction codewords per block used by QR codes. They are computed once
+ * when the class is loaded and shared, so they can be used by several threads.
+ */
+public final class GeneratorPolynomial {
+
+	/**
+	 * Highest number of error correction codewords per block in a QR code
+	 */
+	public static final int MAX_CACHED_DEGREE = 30;
+
+	private static final GeneratorPolynomial[] CACHE = cacheGenerator();
+
+	/*
+	 * Logarithms of the coefficients of x^(n-1), ..., x^0. The leading coefficient
+	 * (always 1) is omitted. Never modified after construction.
+	 */
+	final int[] logs;
+
+	/**
+	 * Highest degree for which a product table is built
+	 */
+	static final int MAX_PRODUCT_DEGREE = 32;
+
+	/*
+	 * Row f (256 rows of 4 longs) holds the products f * (coefficients of x^(n-1), ..., x^0)
+	 * packed as bytes, the most significant byte of the first long being the coefficient
+	 * of x^(n-1). The unused bytes are zeros. The table-driven encoder thus subtracts a
+	 * whole multiple of the generator with one row lookup. Null if the degree is higher
+	 * than MAX_PRODUCT_DEGREE, never modified after construction.
+	 */
+	final long[] products;
+
+	private GeneratorPolynomial(int[] logs) {
+		this.logs = logs;
+		this.products = productTableGenerator(logs);
+	}
+
+	private static GeneratorPolynomial[] cacheGenerator() {
+		GeneratorPolynomial[] cache = new GeneratorPolynomial[MAX_CACHED_DEGREE + 1];
+		for (int degree = 1; degree <= MAX_CACHED_DEGREE; degree++) {
+			cache[degree] = new GeneratorPolynomial(GaloisField.generatorPolynomial(degree));
+		}
+		return cache;
+	}
+
+	private static long[] productTableGenerator(int[] logs) {
+		int n = logs.length;
+		if (n > MAX_PRODUCT_DEGREE) {
+			return null;
+		}
+		long[] table = new long[256 * 4];
+		for (int factor = 1; factor < 256; factor++) {
+			int logFactor = GaloisField.LOG_TABLE[factor];
+			for (int j = 0; j < n; j++) {
+				long product = GaloisField.EXP_TABLE[logs[j] + logFactor];
+				table[factor * 4 + j / 8] |= product << (56 - 8 * (j % 8));
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Get the generator polynomial for a given number of error correction codewords.
+	 * The lookup is constant time for the degrees used by QR codes.
+	 *
+	 * @param degree
+	 *            the number of error correction codewords
+	 * @return the generator polynomial of the given degree
+	 */
+	public static GeneratorPolynomial of(int degree) {
+		if (degree >= 1 && degree <= MAX_CACHED_DEGREE) {
+			return CACHE[degree];
+		}
+		return new GeneratorPolynomial(GaloisField.generatorPolynomial(degree));
+	}
+
+	/**
+	 * @return the degree of the polynomial, i.e. the number of error correction codewords
+	 */
+	public int degree() {
+		return logs.length;
+	}
+
+	/**
+	 * @param power
+	 *            the power of x, between 0 and degree() included
+	 * @return the coefficient of x^power
+	 */
+	public int coefficient(int power) {
+		if (power < 0 || power > logs.length) {
+			throw new IllegalArgumentException("The power has to be between 0 and " + logs.length);
+		}
+		if (power == logs.length) {
+			return 1;
+		}
+		return GaloisField.EXP_TABLE[logs[logs.length - 1 - power]];
+	}
+}
@@ -0,0 +1,105 @@
+package reedsolomon;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Column-wise batch encoder using the incubating Vector API. Only loaded by
+ * {@link BatchEncoding} when the jdk.incubator.vector module is present, and has to be
+ * compiled with --add-modules jdk.incubator.vector.
+ *
+ * Each lane holds one block. The remainder register is a ring of degree() vectors, and
+ * the product factor * coefficient is computed for all lanes with two 16-entry shuffles:
+ * one indexed by the low nibble of the factor, the other by the high nibble.
+ */
+final class VectorBatchEncoder implements BatchEncoding.ColumnEncoder {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+	VectorBatchEncoder() {
+		if (LANES < 16) {
+			throw new UnsupportedOperationException("Vectors of 16 bytes at least are needed");
+		}
+	}
+
+	@Override
+	public void encodeColumns(byte[] columns, int blockCount, int length, GeneratorPolynomial generator,
+			byte[] eccColumns) {
+		int n = generator.degree();
+		int vectorBlocks = blockCount - blockCount % LANES;
+
+		if (vectorBlocks > 0) {
+			byte[] tables = nibbleTables(generator);
+			byte[] remainder = new byte[n * LANES];
+			for (int b = 0; b < vectorBlocks; b += LANES) {
+				encodeLanes(columns, blockCount, b, length, n, tables, remainder, eccColumns);
+			}
+		}
+
+		BatchEncoding.encodeColumns(columns, blockCount, vectorBlocks, blockCount, length, generator, eccColumns);
+	}
+
+	/**
+	 * Encode the LANES blocks starting at firstBlock
+	 */
+	private static void encodeLanes(byte[] columns, int blockCount, int firstBlock, int length, int n,
+			byte[] tables, byte[] remainder, byte[] eccColumns) {
+		ByteVector zero = ByteVector.zero(SPECIES);
+		for (int j = 0; j < n; ++j) {
+			zero.intoArray(remainder, j * LANES);
+		}
+
+		/*
+		 * Logical term j of the remainder is stored in slot (start + j) % n
+		 */
+		int start = 0;
+		for (int i = 0; i < length; ++i) {
+			ByteVector factor = ByteVector.fromArray(SPECIES, columns, i * blockCount + firstBlock)
+					.lanewise(VectorOperators.XOR, ByteVector.fromArray(SPECIES, remainder, start * LANES));
+			zero.intoArray(remainder, start * LANES);
+			VectorShuffle<Byte> low = factor.lanewise(VectorOperators.AND, (byte) 0x0F).toShuffle();
+			VectorShuffle<Byte> high = factor.lanewise(VectorOperators.LSHR, 4).toShuffle();
+
+			int slot = start;
+			for (int j = 0; j < n; ++j) {
+				if (++slot == n) {
+					slot = 0;
+				}
+				ByteVector product = ByteVector.fromArray(SPECIES, tables, (2 * j) * LANES).rearrange(low)
+						.lanewise(VectorOperators.XOR,
+								ByteVector.fromArray(SPECIES, tables, (2 * j + 1) * LANES).rearrange(high));
+				ByteVector.fromArray(SPECIES, remainder, slot * LANES).lanewise(VectorOperators.XOR, product)
+						.intoArray(remainder, slot * LANES);
+			}
+			if (++start == n) {
+				start = 0;
+			}
+		}
+
+		for (int j = 0; j < n; ++j) {
+			int slot = (start + j) % n;
+			ByteVector.fromArray(SPECIES, remainder, slot * LANES).intoArray(eccColumns, j * blockCount + firstBlock);
+		}
+	}
+
+	/**
+	 * @return for each coefficient j of the generator, two tables of LANES bytes (only the
+	 *         first 16 being used): the products of the coefficient by the values 0 to 15,
+	 *         then by the values 0x00 to 0xF0 by steps of 0x10
+	 */
+	private static byte[] nibbleTables(GeneratorPolynomial generator) {
+		int n = generator.degree();
+		byte[] tables = new byte[2 * n * LANES];
+		for (int j = 0; j < n; ++j) {
+			int coefficient = generator.coefficient(n - 1 - j);
+			for (int nibble = 0; nibble < 16; ++nibble) {
+				tables[(2 * j) * LANES + nibble] = (byte) GaloisField.multiply(coefficient, nibble);
+				tables[(2 * j + 1) * LANES + nibble] = (byte) GaloisField.multiply(coefficient, nibble << 4);
+			}
+		}
+		return tables;
+	}
+}